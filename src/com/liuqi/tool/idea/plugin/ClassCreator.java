@@ -93,11 +93,36 @@ class ClassCreator {
             String name = field.getName();
             PsiType type = field.getType();
 
-            psiUtils.findClass(type.getCanonicalText()).ifPresent(typeClass -> psiUtils.importClass(aClass, typeClass));
-
             String typeName = type.getCanonicalText();
-            if (typeName.contains(".")) {
-                typeName = typeName.substring(typeName.lastIndexOf(".") + 1);
+            if (psiUtils.getRelationAnnotation(field).isPresent()) {
+                // 关联实体转换为同目录下对应的DTO，避免DTO中持有受管理或者延迟加载的实体
+                Optional<PsiClass> entityClass = psiUtils.getEntityClass(type);
+                if (entityClass.isPresent()) {
+                    typeName = getDtoName(entityClass.get());
+                } else {
+                    // 无法解析的关联不复制到DTO中
+                    Optional<PsiClass> elementClass = psiUtils.getCollectionEntityClass(type);
+                    Optional<PsiClass> collectionClass = elementClass.map(c -> ((PsiClassType) type).resolve());
+                    if (!collectionClass.isPresent()) {
+                        continue;
+                    }
+
+                    psiUtils.importClass(aClass, collectionClass.get());
+                    typeName = collectionClass.get().getName() + "<" + getDtoName(elementClass.get()) + ">";
+                }
+            } else if (type instanceof PsiClassType && 0 != ((PsiClassType) type).getParameterCount()) {
+                // 泛型类型，需要导入原始类型及各类型参数
+                PsiClassType classType = (PsiClassType) type;
+                Optional.ofNullable(classType.resolve()).ifPresent(typeClass -> psiUtils.importClass(aClass, typeClass));
+                for (PsiType parameter : classType.getParameters()) {
+                    psiUtils.findClass(parameter.getCanonicalText()).ifPresent(typeClass -> psiUtils.importClass(aClass, typeClass));
+                }
+                typeName = type.getPresentableText();
+            } else {
+                psiUtils.findClass(type.getCanonicalText()).ifPresent(typeClass -> psiUtils.importClass(aClass, typeClass));
+                if (typeName.contains(".")) {
+                    typeName = typeName.substring(typeName.lastIndexOf(".") + 1);
+                }
             }
 
             // 添加校验注解
@@ -156,6 +181,16 @@ class ClassCreator {
         return this;
     }
 
+    /**
+     * 获取实体类对应的DTO名称，与生成DTO时的命名一致
+     *
+     * @param entityClass 实体类
+     * @return DTO类名
+     */
+    static String getDtoName(PsiClass entityClass) {
+        return Optional.ofNullable(entityClass.getName()).orElse("").replace("Entity", "") + "DTO";
+    }
+
     public static class And {
         private PsiClass psiClass;
 
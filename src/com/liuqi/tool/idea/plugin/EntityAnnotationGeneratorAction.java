@@ -3,10 +3,18 @@ package com.liuqi.tool.idea.plugin;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.psi.*;
+import com.liuqi.tool.idea.plugin.bean.GeneratorConfig;
 import com.liuqi.tool.idea.plugin.utils.MyStringUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
 /**
  * 
  *
@@ -14,6 +22,51 @@ import org.jetbrains.annotations.NotNull;
  * @version V1.0
  **/
 public class EntityAnnotationGeneratorAction extends MyAnAction {
+    /**
+     * 未指定长度时字符串的默认长度
+     */
+    private static final int DEFAULT_VARCHAR_LENGTH = 255;
+
+    /**
+     * 超过该长度的字符串使用text类型存储
+     */
+    private static final int MAX_VARCHAR_LENGTH = 4000;
+
+    /**
+     * 超过该长度的字符串使用mediumtext类型存储
+     */
+    private static final int MEDIUM_TEXT_LENGTH = 65535;
+
+    /**
+     * 雪花算法主键生成器：41位时间戳 + 10位节点编号 + 12位序列号，节点编号通过系统属性snowflake.node指定
+     */
+    private static final String SNOWFLAKE_GENERATOR = "/** 雪花算法主键生成器，节点编号通过系统属性snowflake.node指定 **/\n" +
+            "public class SnowflakeIdGenerator implements IdentifierGenerator {\n" +
+            "    private static final long EPOCH = 1577836800000L;\n" +
+            "    private static final long NODE_BITS = 10L;\n" +
+            "    private static final long SEQUENCE_BITS = 12L;\n" +
+            "    private static final long MAX_SEQUENCE = ~(-1L << SEQUENCE_BITS);\n" +
+            "    private static final long NODE = Long.getLong(\"snowflake.node\", 0L) & ~(-1L << NODE_BITS);\n" +
+            "    private static long lastTimestamp = -1L;\n" +
+            "    private static long sequence = 0L;\n" +
+            "\n" +
+            "    @Override public Serializable generate(SharedSessionContractImplementor session, Object object) { return nextId(); }\n" +
+            "\n" +
+            "    public static synchronized long nextId() {\n" +
+            "        // 时钟回拨时沿用上一次的时间戳，保证主键单调递增\n" +
+            "        long timestamp = Math.max(System.currentTimeMillis(), lastTimestamp);\n" +
+            "        if (timestamp == lastTimestamp) {\n" +
+            "            sequence = (sequence + 1) & MAX_SEQUENCE;\n" +
+            "            if (0 == sequence) {\n" +
+            "                while (timestamp <= lastTimestamp) { timestamp = System.currentTimeMillis(); }\n" +
+            "            }\n" +
+            "        } else {\n" +
+            "            sequence = 0L;\n" +
+            "        }\n" +
+            "        lastTimestamp = timestamp;\n" +
+            "        return ((timestamp - EPOCH) << (NODE_BITS + SEQUENCE_BITS)) | (NODE << SEQUENCE_BITS) | sequence;\n" +
+            "    }\n" +
+            "}";
 
     @Override
     public void actionPerformed(@NotNull AnActionEvent anActionEvent) {
@@ -31,47 +84,318 @@ public class EntityAnnotationGeneratorAction extends MyAnAction {
             className = className.substring(0, className.length() - 6);
         }
 
+        GeneratorConfig config = GeneratorConfig.load(project);
+        String entityName = className;
         String tableName = "t_" + MyStringUtils.toUnderLineStr(className);
         WriteCommandAction.runWriteCommandAction(project, () -> {
             PsiAnnotation psiAnnotation = psiUtils.addAnnotation(aClass, "javax.persistence.Entity");
-            psiUtils.addAnnotationFromStrAfter(aClass, "@Table(name = \"" + tableName + "\")", psiAnnotation);
+            String indexes = getIndexes(aClass, tableName, GeneratorConfig.getEntityFields(config.getIndexFields(), entityName));
+            if (StringUtils.isBlank(indexes)) {
+                psiUtils.addAnnotationFromStrAfter(aClass, "@Table(name = \"" + tableName + "\")", psiAnnotation);
+            } else {
+                psiUtils.addAnnotationFromStrAfter(aClass, "@Table(name = \"" + tableName + "\", indexes = {" + indexes + "})", psiAnnotation);
+            }
             PsiJavaFile javaFile = (PsiJavaFile) aClass.getContainingFile();
             psiUtils.findClass("javax.persistence.Table").ifPresent(javaFile::importClass);
+            psiUtils.findClass("javax.persistence.Index").ifPresent(javaFile::importClass);
             psiUtils.findClass("javax.persistence.GeneratedValue").ifPresent(javaFile::importClass);
             psiUtils.findClass("javax.persistence.GenerationType").ifPresent(javaFile::importClass);
 
+            // 启用乐观锁时，实体中没有version字段则增加该字段
+            if (config.getVersionColumn() && null == aClass.findFieldByName("version", true)) {
+                addVersionField(aClass);
+            }
+
             // 为每一个属性增加注解
             for (PsiField field : aClass.getFields()) {
                 String name = MyStringUtils.toUnderLineStr(field.getName());
                 if ("id".equals(name)) {
                     PsiAnnotation psiAnnotation1 = psiUtils.addAnnotation(field, "javax.persistence.Id");
-                    psiUtils.addAnnotationFromStrAfter(field, "@javax.persistence.GeneratedValue(strategy = GenerationType.IDENTITY)", psiAnnotation1);
+                    addIdGenerator(field, psiAnnotation1, tableName, config);
+                    continue;
+                }
+
+                // 关联实体字段使用延迟加载的关联注解，不生成列定义
+                if (addRelation(field, entityName)) {
                     continue;
                 }
 
-                PsiType psiType = field.getType();
-                String typeName = psiType.getCanonicalText();
-                String annotationField = "@javax.persistence.Column(name = \"" + name + "\", columnDefinition=\"";
-                if (typeName.contains("String") || typeName.contains("Char")) {
-                    annotationField = annotationField + "varchar(255) comment ''\")";
-                } else if (typeName.contains("Float") || typeName.contains("float") || typeName.contains("Double") || typeName.contains("double")) {
-                    annotationField = annotationField + "numeric(24, 4) comment ''\")";
-                } else if (typeName.contains("LocalDateTime") || typeName.contains("Date")) {
-                    if (typeName.toLowerCase().contains("update")) {
-                        annotationField = annotationField + "timestamp not null default current_timestamp on update current_timestamp comment ''\")";
-                    } else {
-                        annotationField = annotationField + "timestamp not null default current_timestamp comment ''\")";
-                    }
-                } else if (typeName.contains("Long")) {
-                    annotationField = annotationField + "bigint comment ''\")";
-                } else if (psiType.getClass().isEnum()) {
-                    annotationField = annotationField + "int(1) default 0 comment ''\")";
-                } else {
-                    annotationField = annotationField + "integer comment ''\")";
+                if ("version".equals(name) && config.getVersionColumn()) {
+                    PsiAnnotation versionAnnotation = psiUtils.addAnnotation(field, "javax.persistence.Version");
+                    psiUtils.addAnnotationFromStrAfter(field, "@javax.persistence.Column(name = \"version\", columnDefinition=\"bigint not null default 0 comment '乐观锁版本号'\")", versionAnnotation);
+                    continue;
                 }
 
+                String columnDefinition = getColumnDefinition(field);
+                String annotationField = "@javax.persistence.Column(name = \"" + name + "\", columnDefinition=\""
+                        + columnDefinition + " comment ''\")";
                 psiUtils.addAnnotationFromStrFirst(field, annotationField);
+
+                // 大字段延迟加载，需要开启Hibernate字节码增强的enableLazyInitialization才生效
+                if (MyStringUtils.isLargeObjectType(columnDefinition) && null == field.getAnnotation("javax.persistence.Basic")) {
+                    psiUtils.addAnnotationFromStrFirst(field, "@javax.persistence.Basic(fetch = javax.persistence.FetchType.LAZY)");
+                }
             }
         });
     }
+
+    /**
+     * 增加乐观锁版本号字段，实体中显式定义了Getter方法时同时生成它的Getter与Setter方法
+     *
+     * @param aClass 实体类
+     */
+    private void addVersionField(PsiClass aClass) {
+        PsiElementFactory elementFactory = PsiElementFactory.SERVICE.getInstance(project);
+        aClass.add(elementFactory.createFieldFromText("private Long version;", aClass));
+
+        boolean withGetters = Arrays.stream(aClass.getMethods())
+                .anyMatch(method -> method.isPhysical() && method.getName().startsWith("get"));
+        if (withGetters) {
+            aClass.add(elementFactory.createMethodFromText("public Long getVersion() { return version; }", aClass));
+            aClass.add(elementFactory.createMethodFromText("public void setVersion(Long version) { this.version = version; }", aClass));
+        }
+    }
+
+    /**
+     * 为关联实体字段增加关联注解，已有关联注解时统一改为延迟加载
+     * 单个实体使用ManyToOne，外键列为"属性名_id"；实体集合在对方有指向本实体的属性时通过mappedBy关联，否则通过对方表中的"本实体_id"列关联
+     *
+     * @param field      字段
+     * @param entityName 实体名称
+     * @return 是否为关联字段
+     */
+    private boolean addRelation(PsiField field, String entityName) {
+        Optional<PsiAnnotation> relation = psiUtils.getRelationAnnotation(field);
+        if (relation.isPresent()) {
+            psiUtils.setAnnotationValue(relation.get(), "fetch", "javax.persistence.FetchType.LAZY");
+            return true;
+        }
+
+        if (psiUtils.getEntityClass(field.getType()).isPresent()) {
+            psiUtils.addAnnotationFromStrFirst(field, "@javax.persistence.JoinColumn(name = \""
+                    + MyStringUtils.toUnderLineStr(field.getName()) + "_id\")");
+            psiUtils.addAnnotationFromStrFirst(field, "@javax.persistence.ManyToOne(fetch = javax.persistence.FetchType.LAZY)");
+            return true;
+        }
+
+        Optional<PsiClass> elementClass = psiUtils.getCollectionEntityClass(field.getType());
+        if (!elementClass.isPresent()) {
+            return false;
+        }
+
+        PsiClass ownerClass = field.getContainingClass();
+        Optional<PsiField> mappedBy = Arrays.stream(elementClass.get().getAllFields())
+                .filter(f -> f.getType() instanceof PsiClassType && Objects.equals(ownerClass, ((PsiClassType) f.getType()).resolve()))
+                .findFirst();
+        if (mappedBy.isPresent()) {
+            psiUtils.addAnnotationFromStrFirst(field, "@javax.persistence.OneToMany(mappedBy = \"" + mappedBy.get().getName()
+                    + "\", fetch = javax.persistence.FetchType.LAZY)");
+        } else {
+            psiUtils.addAnnotationFromStrFirst(field, "@javax.persistence.JoinColumn(name = \"" + MyStringUtils.toUnderLineStr(entityName) + "_id\")");
+            psiUtils.addAnnotationFromStrFirst(field, "@javax.persistence.OneToMany(fetch = javax.persistence.FetchType.LAZY)");
+        }
+
+        return true;
+    }
+
+    /**
+     * 根据配置的主键生成策略增加GeneratedValue注解
+     * IDENTITY主键需要插入后才能获取，Hibernate会因此关闭批量插入；SEQUENCE与TABLE通过allocationSize预分配主键，
+     * SNOWFLAKE在应用内生成主键，均可以批量插入
+     *
+     * @param field       主键字段
+     * @param idAnnotation Id注解，生成的注解放在它之后
+     * @param tableName   表名
+     * @param config      生成配置
+     */
+    private void addIdGenerator(PsiField field, PsiAnnotation idAnnotation, String tableName, GeneratorConfig config) {
+        int allocationSize = config.getIdAllocationSize();
+        switch (config.getIdStrategy()) {
+            case "SEQUENCE":
+                String sequenceName = "seq_" + tableName.replaceFirst("^t_", "");
+                psiUtils.addAnnotationFromStrAfter(field, "@javax.persistence.SequenceGenerator(name = \"" + sequenceName
+                        + "\", sequenceName = \"" + sequenceName + "\", allocationSize = " + allocationSize + ")", idAnnotation);
+                psiUtils.addAnnotationFromStrAfter(field, "@javax.persistence.GeneratedValue(strategy = GenerationType.SEQUENCE, generator = \""
+                        + sequenceName + "\")", idAnnotation);
+                break;
+            case "TABLE":
+                psiUtils.addAnnotationFromStrAfter(field, "@javax.persistence.TableGenerator(name = \"" + tableName
+                        + "_id\", table = \"t_id_generator\", pkColumnName = \"name\", valueColumnName = \"next_id\", pkColumnValue = \""
+                        + tableName + "\", allocationSize = " + allocationSize + ")", idAnnotation);
+                psiUtils.addAnnotationFromStrAfter(field, "@javax.persistence.GeneratedValue(strategy = GenerationType.TABLE, generator = \""
+                        + tableName + "_id\")", idAnnotation);
+                break;
+            case "SNOWFLAKE":
+                PsiDirectory idDirectory = psiUtils.getOrCreateSubDirectory(containerDirectory.getParentDirectory(), "id");
+                ClassCreator.of(module).init("SnowflakeIdGenerator", SNOWFLAKE_GENERATOR)
+                        .importClass("java.io.Serializable")
+                        .importClass("org.hibernate.engine.spi.SharedSessionContractImplementor")
+                        .importClass("org.hibernate.id.IdentifierGenerator")
+                        .addTo(idDirectory)
+                        .and(generatorClass -> {
+                            psiUtils.addAnnotationFromStrAfter(field, "@org.hibernate.annotations.GenericGenerator(name = \"snowflake\", strategy = \""
+                                    + psiUtils.getPackageAndName(generatorClass) + "\")", idAnnotation);
+                            psiUtils.addAnnotationFromStrAfter(field, "@javax.persistence.GeneratedValue(generator = \"snowflake\")", idAnnotation);
+                        });
+                break;
+            default:
+                psiUtils.addAnnotationFromStrAfter(field, "@javax.persistence.GeneratedValue(strategy = GenerationType.IDENTITY)", idAnnotation);
+        }
+    }
+
+    /**
+     * 根据字段类型及Size、Length、Digits等校验注解确定列定义
+     *
+     * @param field 字段
+     * @return 列定义，不包含注释
+     */
+    private String getColumnDefinition(PsiField field) {
+        PsiType psiType = field.getType();
+        String typeName = psiType.getCanonicalText();
+        String fieldName = field.getName();
+
+        if (null != field.getAnnotation("javax.persistence.Lob")) {
+            return "byte[]".equals(typeName) ? "longblob" : "text";
+        }
+
+        if ("java.lang.String".equals(typeName)) {
+            int length = getMaxLength(field).orElse(DEFAULT_VARCHAR_LENGTH);
+            if (length > MEDIUM_TEXT_LENGTH) {
+                return "mediumtext";
+            } else if (length > MAX_VARCHAR_LENGTH) {
+                return "text";
+            }
+
+            return "varchar(" + length + ")";
+        } else if ("char".equals(typeName) || "java.lang.Character".equals(typeName)) {
+            return "char(1)";
+        } else if ("boolean".equals(typeName) || "java.lang.Boolean".equals(typeName)) {
+            return "tinyint(1)";
+        } else if ("byte".equals(typeName) || "java.lang.Byte".equals(typeName)) {
+            return "tinyint";
+        } else if ("short".equals(typeName) || "java.lang.Short".equals(typeName)) {
+            return "smallint";
+        } else if ("int".equals(typeName) || "java.lang.Integer".equals(typeName)) {
+            return "int";
+        } else if ("long".equals(typeName) || "java.lang.Long".equals(typeName)) {
+            return "bigint";
+        } else if ("float".equals(typeName) || "java.lang.Float".equals(typeName)) {
+            return getDecimal(field).orElse("float");
+        } else if ("double".equals(typeName) || "java.lang.Double".equals(typeName)) {
+            return getDecimal(field).orElse("double");
+        } else if ("java.math.BigDecimal".equals(typeName)) {
+            return getDecimal(field).orElse("numeric(24, 4)");
+        } else if ("byte[]".equals(typeName)) {
+            return "blob";
+        } else if ("java.time.LocalDate".equals(typeName)) {
+            return "date";
+        } else if ("java.time.LocalTime".equals(typeName)) {
+            return "time";
+        } else if (typeName.contains("LocalDateTime") || typeName.contains("Date") || typeName.contains("Timestamp")) {
+            if (fieldName.toLowerCase().contains("update")) {
+                return "timestamp not null default current_timestamp on update current_timestamp";
+            }
+
+            return "timestamp not null default current_timestamp";
+        }
+
+        PsiClass typeClass = psiType instanceof PsiClassType ? ((PsiClassType) psiType).resolve() : null;
+        if (null != typeClass && typeClass.isEnum()) {
+            List<String> constants = Arrays.stream(typeClass.getFields())
+                    .filter(f -> f instanceof PsiEnumConstant)
+                    .map(PsiField::getName)
+                    .collect(Collectors.toList());
+
+            // 使用EnumType.STRING时按最长的枚举名称确定长度，否则按序号存储
+            boolean byName = psiUtils.getAnnotationValue(field.getAnnotation("javax.persistence.Enumerated"), "value")
+                    .map(value -> value.contains("STRING"))
+                    .orElse(false);
+            if (byName) {
+                return "varchar(" + constants.stream().mapToInt(String::length).max().orElse(1) + ")";
+            }
+
+            return constants.size() > Byte.MAX_VALUE ? "smallint" : "tinyint";
+        }
+
+        return "integer";
+    }
+
+    /**
+     * 从Size或者Length注解中获取字符串最大长度
+     */
+    private Optional<Integer> getMaxLength(PsiField field) {
+        Optional<Integer> size = psiUtils.getAnnotationIntValue(field.getAnnotation("javax.validation.constraints.Size"), "max");
+        if (size.isPresent()) {
+            return size;
+        }
+
+        return psiUtils.getAnnotationIntValue(field.getAnnotation("org.hibernate.validator.constraints.Length"), "max");
+    }
+
+    /**
+     * 根据Digits注解生成decimal定义
+     */
+    private Optional<String> getDecimal(PsiField field) {
+        PsiAnnotation digits = field.getAnnotation("javax.validation.constraints.Digits");
+        Optional<Integer> integer = psiUtils.getAnnotationIntValue(digits, "integer");
+        if (!integer.isPresent()) {
+            return Optional.empty();
+        }
+
+        int fraction = psiUtils.getAnnotationIntValue(digits, "fraction").orElse(0);
+        return Optional.of("decimal(" + (integer.get() + fraction) + ", " + fraction + ")");
+    }
+
+    /**
+     * 根据生成的SQL中使用到的过滤及排序字段生成索引定义
+     * deleted与create_time同时存在时生成组合索引，覆盖where deleted = 0 order by create_time desc的默认查询；
+     * 以Id结尾的外键字段、关联实体的外键列及配置的过滤字段生成单列索引；
+     * 增量同步按(更新时间, id)分页查询，有update_time时生成该组合索引，只有create_time并且有deleted时生成(create_time, id)索引
+     *
+     * @param aClass       实体类
+     * @param tableName    表名
+     * @param filterFields 配置的需要建立索引的过滤字段
+     * @return Index注解列表，没有索引时返回空字符串
+     */
+    private String getIndexes(PsiClass aClass, String tableName, List<String> filterFields) {
+        List<String> indexColumns = new ArrayList<>();
+        boolean withDeleted = null != aClass.findFieldByName("deleted", true);
+        boolean withCreateTime = null != aClass.findFieldByName("createTime", true);
+        if (withDeleted && withCreateTime) {
+            indexColumns.add("deleted, create_time");
+        } else if (withCreateTime) {
+            indexColumns.add("create_time");
+        } else if (withDeleted) {
+            indexColumns.add("deleted");
+        }
+
+        if (null != aClass.findFieldByName("updateTime", true)) {
+            indexColumns.add("update_time, id");
+        } else if (withDeleted && withCreateTime) {
+            indexColumns.add("create_time, id");
+        }
+
+        for (PsiField field : aClass.getAllFields()) {
+            String name = field.getName();
+            if ((!"id".equals(name) && name.endsWith("Id")) || filterFields.contains(name)) {
+                String column = MyStringUtils.toUnderLineStr(name);
+                if (!indexColumns.contains(column)) {
+                    indexColumns.add(column);
+                }
+            } else if (psiUtils.getEntityClass(field.getType()).isPresent() && !psiUtils.getRelationAnnotation(field)
+                    .map(relation -> relation.findDeclaredAttributeValue("mappedBy")).isPresent()) {
+                // 关联实体的外键列，关联查询时通过它连接
+                indexColumns.add(MyStringUtils.toUnderLineStr(name) + "_id");
+            } else if (field.getType() instanceof PsiClassType && Optional.ofNullable(((PsiClassType) field.getType()).resolve())
+                    .map(PsiClass::isEnum).orElse(false)) {
+                // 枚举字段按值分组统计，与deleted组成联合索引时统计只需要扫描索引
+                indexColumns.add((withDeleted ? "deleted, " : "") + MyStringUtils.toUnderLineStr(name));
+            }
+        }
+
+        String prefix = "idx_" + tableName.replaceFirst("^t_", "") + "_";
+        return indexColumns.stream()
+                .map(columns -> "@Index(name = \"" + prefix + columns.replace(", ", "_") + "\", columnList = \"" + columns + "\")")
+                .collect(Collectors.joining(", "));
+    }
 }
@@ -19,6 +19,8 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.intellij.psi.PsiType.BOOLEAN;
 
@@ -79,6 +81,53 @@ public class GeneratorAction extends MyAnAction {
         Optional.ofNullable(aClass.findFieldByName("createTime", false))
                 .ifPresent(field -> config.setWithCreateTime(true));
 
+        // 获取是否有updateTime字段，如果有的话，列表查询支持通过数据变更标识进行条件请求
+        Optional.ofNullable(aClass.findFieldByName("updateTime", true))
+                .ifPresent(field -> config.setWithUpdateTime(true));
+
+        // 获取是否有乐观锁版本号字段，如果有的话，生成按版本号条件更新的语句及重试方法
+        Optional.ofNullable(aClass.findFieldByName("version", true))
+                .ifPresent(field -> config.setWithVersion(true));
+
+        // 获取是否有大字段，如果有的话，列表查询不返回大字段，并生成查询详情的语句
+        config.setWithLob(getColumns(aClass).stream().anyMatch(column -> column.lob));
+
+        // 获取是否有可以通过连接查询加载的关联实体，如果有的话，生成一次加载关联数据的查询，避免逐条查询关联数据
+        config.setWithAssociation(!getJoinAssociations(aClass).isEmpty());
+
+        // 获取是否有枚举字段或者createTime字段，如果有的话，生成分组统计语句
+        config.setWithAggregation(config.getWithCreateTime() || !getEnumColumns(aClass).isEmpty());
+
+        // 获取是否有Long类型的parentId字段，如果有的话，生成递归查询子树及祖先节点的语句，并在内存中组装树形结构
+        Optional.ofNullable(aClass.findFieldByName("parentId", true))
+                .ifPresent(field -> config.setWithTree(field.getType().equalsToText("java.lang.Long")));
+
+        // 获取是否有全文检索字段，如果有的话，生成全文检索语句及相应的接口
+        config.setWithSearch(!getSearchColumns(aClass).isEmpty());
+
+        // 获取主键生成策略，IDENTITY主键会使Hibernate无法批量插入，其它策略下save(List)需要分批flush；
+        // 主键由JPA主键生成器生成时数据库没有默认值，MyBatis批量新增前需要通过同一个生成器分配主键
+        Optional.ofNullable(aClass.findFieldByName("id", true))
+                .ifPresent(field -> {
+                    PsiAnnotation annotation = field.getAnnotation("javax.persistence.GeneratedValue");
+                    config.setWithIdentity(null != annotation && psiUtils.getAnnotationValue(annotation, "strategy").orElse("").contains("IDENTITY"));
+                    config.setWithIdGenerator(null != annotation && !config.getWithIdentity());
+                });
+
+        // 获取是否需要为该实体生成缓存
+        String entityName = entityClasses.getEntityName();
+        config.setWithCache(GeneratorConfig.isEntityEnabled(config.getCacheEntities(), entityName));
+
+        // 获取是否需要为该实体生成内存快照，通过配置或者实体上的Snapshot注解指定
+        boolean snapshotAnnotated = Arrays.stream(aClass.getAnnotations())
+                .map(PsiAnnotation::getQualifiedName)
+                .anyMatch(name -> null != name && (name.equals("Snapshot") || name.endsWith(".Snapshot")));
+        config.setWithSnapshot(snapshotAnnotated || GeneratorConfig.isEntityEnabled(config.getSnapshotEntities(), entityName));
+
+        // 获取是否需要为该实体生成逻辑删除数据清理组件，逻辑删除时会写入update_time，以此作为删除时间判断是否超过保留期
+        config.setWithPurge(config.getWithDeleted() && null != getChangeTimeColumn()
+                && GeneratorConfig.isEntityEnabled(config.getPurgeEntities(), entityName));
+
         // 加载注释信息
         PsiAnnotation commentAnnotation = aClass.getAnnotation("com.liuqi.common.web.common.annotation.Comment");
         if (null != commentAnnotation) {
@@ -138,7 +187,8 @@ public class GeneratorAction extends MyAnAction {
         // 先检查是否存在AbstractBaseDTO对象，如果存在的话DTO对象需要继承自该对象
         Optional<PsiClass> abstractBaseDTOOptional = psiUtils.findClass("AbstractBaseDTO");
 
-        String dtoContent = comment.getContent("对象") + "\npublic class " + entityName + "DTO";
+        // 按fields查询时由控制器通过同名过滤器只输出指定的属性，其它情况下不过滤
+        String dtoContent = comment.getContent("对象") + "\n@JsonFilter(\"" + entityName + "DTO\") public class " + entityName + "DTO";
         boolean extendFromBaseDTO = false;
         for (PsiClassType extendsListType : entityClasses.getEntityClass().getExtendsListTypes()) {
             extendFromBaseDTO = extendsListType.getName().contains("AbstractBaseEntity");
@@ -154,9 +204,26 @@ public class GeneratorAction extends MyAnAction {
         boolean pExtendFromBaseDTO = extendFromBaseDTO;
         ClassCreator.of(module).init(entityName + "DTO", dtoContent)
                 .copyFields(entityClasses.getEntityClass())
+                .importClass("com.fasterxml.jackson.annotation.JsonFilter")
                 .importClassIf("AbstractBaseDTO", () -> pExtendFromBaseDTO)
                 .addTo(dtoDirectory)
                 .and(dtoClass -> addExcelAnnotations(entityClasses.setDtoClass(dtoClass)));
+        createJacksonConfig();
+    }
+
+    /**
+     * 创建JSON配置，DTO上的属性过滤器只在按fields查询时由控制器指定，未指定过滤器时输出所有属性
+     */
+    private void createJacksonConfig() {
+        createConfigClass("JacksonConfig", "/** JSON配置，未指定属性过滤器时不过滤 **/\n" +
+                        "@Configuration public class JacksonConfig {" +
+                        "@Resource private ObjectMapper objectMapper;" +
+                        "@PostConstruct public void init() { objectMapper.setFilterProvider(new SimpleFilterProvider().setFailOnUnknownId(false)); }}",
+                "org.springframework.context.annotation.Configuration",
+                "javax.annotation.Resource",
+                "javax.annotation.PostConstruct",
+                "com.fasterxml.jackson.databind.ObjectMapper",
+                "com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider");
     }
 
     /**
@@ -199,8 +266,11 @@ public class GeneratorAction extends MyAnAction {
             ClassCreator.of(module).init(mapperName,
                     comment.getContent("对象转换器") + "\n@Mapper(componentModel = \"spring\")" +
                             "public interface " + mapperName + " extends EntityMapper<"
-                            + entityClasses.getDtoClass().getName() + ", " + entityClasses.getEntityClass().getName() + "> {}")
+                            + entityClasses.getDtoClass().getName() + ", " + entityClasses.getEntityClass().getName() + "> {"
+                            + getAssociationMappings(entityClasses) + "}")
                     .importClass("org.mapstruct.Mapper")
+                    .importClassIf("org.mapstruct.Mapping", () -> !getAssociationMappings(entityClasses).isEmpty())
+                    .importClassIf("org.mapstruct.Named", () -> !getGraphAssociations(entityClasses.getEntityClass()).isEmpty())
                     .importClass(entityClasses.getEntityClass())
                     .addTo(mapperDirectory)
                     .and(mapperClass -> {
@@ -229,6 +299,61 @@ public class GeneratorAction extends MyAnAction {
 
     }
 
+    /**
+     * 获取关联属性的转换方法，关联实体通过命名的转换方法转换为对应的DTO，只转换实体图中一次加载的关联，其它关联不转换；
+     * 关联对象自身的关联属性不再转换，避免双向关联时循环转换以及逐条延迟加载
+     *
+     * @param entityClasses 实体相关类集合
+     * @return 转换方法，没有关联时返回空字符串
+     */
+    private String getAssociationMappings(EntityClasses entityClasses) {
+        PsiClass entityClass = entityClasses.getEntityClass();
+        String dtoPackage = psiUtils.getPackageName(entityClasses.getDtoClass());
+        List<Association> graphAssociations = getGraphAssociations(entityClass);
+
+        StringBuilder ignores = new StringBuilder();
+        StringBuilder toDtoMappings = new StringBuilder();
+        StringBuilder toEntityMappings = new StringBuilder();
+        StringBuilder methods = new StringBuilder();
+        for (PsiField field : entityClass.getAllFields()) {
+            Optional<Association> association = getAssociation(field);
+            if (!association.isPresent()) {
+                continue;
+            }
+
+            String name = field.getName();
+            if (graphAssociations.stream().noneMatch(a -> a.field.equals(field))) {
+                ignores.append("@Mapping(target = \"").append(name).append("\", ignore = true) ");
+                continue;
+            }
+
+            PsiClass target = association.get().target;
+            String targetEntity = psiUtils.getPackageAndName(target);
+            String targetDto = dtoPackage + "." + ClassCreator.getDtoName(target);
+            String nestedIgnores = Arrays.stream(target.getAllFields())
+                    .filter(targetField -> getAssociation(targetField).isPresent())
+                    .map(targetField -> "@Mapping(target = \"" + targetField.getName() + "\", ignore = true) ")
+                    .collect(Collectors.joining());
+            String methodName = StringUtils.capitalize(name);
+
+            toDtoMappings.append("@Mapping(target = \"").append(name).append("\", qualifiedByName = \"to").append(methodName).append("Dto\") ");
+            toEntityMappings.append("@Mapping(target = \"").append(name).append("\", qualifiedByName = \"to").append(methodName).append("Entity\") ");
+            methods.append("\n@Named(\"to").append(methodName).append("Dto\") ").append(nestedIgnores)
+                    .append(targetDto).append(" to").append(methodName).append("Dto(").append(targetEntity).append(" entity);")
+                    .append("\n@Named(\"to").append(methodName).append("Entity\") ").append(nestedIgnores)
+                    .append(targetEntity).append(" to").append(methodName).append("Entity(").append(targetDto).append(" dto);");
+        }
+
+        if (0 == ignores.length() && 0 == methods.length()) {
+            return "";
+        }
+
+        String dtoName = entityClasses.getDtoClass().getName();
+        String entityName = entityClass.getName();
+        return "\n@Override " + ignores + toDtoMappings + dtoName + " toDto(" + entityName + " entity);"
+                + "\n@Override " + ignores + toEntityMappings + entityName + " toEntity(" + dtoName + " dto);" + methods;
+    }
+
     /**
      * 增加MyBatis相关文件
      */
@@ -243,19 +368,20 @@ public class GeneratorAction extends MyAnAction {
                 .append(entityClasses.getEntityName())
                 .append("Query ");
 
+        String fields = "\n/** 需要返回的属性，为空时返回所有属性 **/ private List<String> fields;";
         if (baseQueryExists) {
-            content.append("extends BaseQuery{}");
+            content.append("extends BaseQuery{").append(fields).append("}");
         } else {
-            content.append("{private Integer page;  \nprivate Integer size;  }");
+            content.append("{private Integer page;  \nprivate Integer size;  ").append(fields).append("}");
         }
 
         // 先创建Query对象
         PsiDirectory queryDirectory = directoryMap.get("query");
         ClassCreator creator = ClassCreator.of(module)
-                .init(entityClasses.getEntityName() + "Query", content.toString());
-        if (!baseQueryExists) {
-            creator.addGetterAndSetterMethods();
-        } else {
+                .init(entityClasses.getEntityName() + "Query", content.toString())
+                .importClass("java.util.List")
+                .addGetterAndSetterMethods();
+        if (baseQueryExists) {
             creator.importClass("BaseQuery");
         }
 
@@ -274,6 +400,11 @@ public class GeneratorAction extends MyAnAction {
      * @param entityClasses 类集
      */
     private void createDao(EntityClasses entityClasses) {
+        if (config.getWithAggregation() && null == entityClasses.getAggregateBucketClass()) {
+            createAggregateBucketClass(entityClasses);
+            return;
+        }
+
         PsiDirectory daoDirectory = directoryMap.get("dao");
 
         if (config.getWithSuper()) {
@@ -281,12 +412,17 @@ public class GeneratorAction extends MyAnAction {
                     comment.getContent("数据库操作类") +
                             "\n@Mapper public interface " + entityClasses.getEntityName() + "Dao extends " + config.getSuperDao() + "" +
                             "<" + entityClasses.getDtoClass().getName() + ">" +
-                            "{}")
+                            "{" + getDaoMethods(entityClasses) + "}")
+                    .importClass("java.util.List")
+                    .importClass("java.util.Collection")
                     .importClass("org.apache.ibatis.annotations.Mapper")
+                    .importClass("org.apache.ibatis.annotations.Param")
+                    .importClass("org.apache.ibatis.cursor.Cursor")
+                    .importClassIf("java.time.LocalDateTime", () -> null != getChangeTimeColumn())
                     .importClass(config.getSuperDao())
                     .addTo(daoDirectory)
                     .and(daoClass -> {
-                        psiUtils.importClass(daoClass, entityClasses.getDtoClass());
+                        psiUtils.importClass(daoClass, entityClasses.getDtoClass(), entityClasses.getQueryClass(), entityClasses.getAggregateBucketClass());
                         createDaoMappingFile(entityClasses.setDaoClass(daoClass));
                     });
         } else {
@@ -295,18 +431,56 @@ public class GeneratorAction extends MyAnAction {
                             "\n@Mapper public interface " + entityClasses.getEntityName() + "Dao {" +
                             "List<" + entityClasses.getDtoClass().getName() + "> query(" + entityClasses.getQueryClass().getName() + " query); " +
                             "void batchAdd(@Param(\"list\") List<" + entityClasses.getDtoClass().getName() + "> dataList);" +
+                            getDaoMethods(entityClasses) +
                             "}")
                     .importClass("java.util.List")
+                    .importClass("java.util.Collection")
                     .importClass("org.apache.ibatis.annotations.Mapper")
                     .importClass("org.apache.ibatis.annotations.Param")
+                    .importClass("org.apache.ibatis.cursor.Cursor")
+                    .importClassIf("java.time.LocalDateTime", () -> null != getChangeTimeColumn())
                     .addTo(daoDirectory)
                     .and(daoClass -> {
-                        psiUtils.importClass(daoClass, entityClasses.getQueryClass(), entityClasses.getDtoClass());
+                        psiUtils.importClass(daoClass, entityClasses.getQueryClass(), entityClasses.getDtoClass(), entityClasses.getAggregateBucketClass());
                         createDaoMappingFile(entityClasses.setDaoClass(daoClass));
                     });
         }
     }
 
+    /**
+     * 获取Dao中除query与batchAdd外的其它方法声明，与映射文件中生成的语句一一对应
+     *
+     * @param entityClasses 实体相关类集合
+     * @return 方法声明
+     */
+    private String getDaoMethods(EntityClasses entityClasses) {
+        String dtoName = entityClasses.getDtoClass().getName();
+        return "void batchDelete(@Param(\"ids\") List<Long> ids);" +
+                "Cursor<" + dtoName + "> streamAll(" + entityClasses.getQueryClass().getName() + " query);" +
+                "int updateSelective(" + dtoName + " dto);" +
+                "void batchUpsert(@Param(\"list\") List<" + dtoName + "> dataList);" +
+                "int updateById(" + dtoName + " dto);" +
+                "List<" + dtoName + "> findByIds(@Param(\"ids\") Collection<Long> ids);" +
+                (config.getWithVersion() ? "int updateWithVersion(" + dtoName + " dto);" : "") +
+                (config.getWithLob() ? dtoName + " findDetail(@Param(\"id\") Long id);" : "") +
+                (config.getWithSnapshot() ? "List<" + dtoName + "> findSnapshot();" : "") +
+                (hasChangeStamp() ? "String changeStamp();" : "") +
+                (null != getChangeTimeColumn() ? "List<" + dtoName + "> changesSince(@Param(\"since\") LocalDateTime since, "
+                        + "@Param(\"cursorId\") Long cursorId, @Param(\"limit\") int limit);" : "") +
+                (config.getWithAssociation() ? "List<" + dtoName + "> findWithAssociations(" + entityClasses.getQueryClass().getName() + " query);" : "") +
+                (config.getWithSearch() ? "List<" + dtoName + "> search(@Param(\"keyword\") String keyword);" : "") +
+                (config.getWithTree() ? "List<" + dtoName + "> findSubtree(@Param(\"id\") Long id);"
+                        + "List<" + dtoName + "> findAncestors(@Param(\"id\") Long id);" : "") +
+                getEnumColumns(entityClasses.getEntityClass()).stream()
+                        .map(column -> "List<AggregateBucket> " + getCountMethod(column) + "();")
+                        .collect(Collectors.joining()) +
+                (config.getWithCreateTime() ? "List<AggregateBucket> countByDay(@Param(\"from\") LocalDateTime from, @Param(\"to\") LocalDateTime to);"
+                        + "List<AggregateBucket> countByMonth(@Param(\"from\") LocalDateTime from, @Param(\"to\") LocalDateTime to);" : "") +
+                (config.getWithPurge() ? "List<Long> findPurgeIds(@Param(\"before\") LocalDateTime before, @Param(\"cursorId\") Long cursorId, "
+                        + "@Param(\"limit\") int limit);" + "int purgeByIds(@Param(\"ids\") List<Long> ids);"
+                        + (config.getPurgeArchive() ? "int archiveByIds(@Param(\"ids\") List<Long> ids);" : "") : "");
+    }
+
     /**
      * 创建MyBatis映射文件
      *
@@ -346,47 +520,41 @@ public class GeneratorAction extends MyAnAction {
             PsiClass entityClass = entityClasses.getEntityClass();
 
             StringBuilder columns = new StringBuilder();
+            StringBuilder listResults = new StringBuilder();
             StringBuilder insertColumns = new StringBuilder();
             StringBuilder insertFields = new StringBuilder();
-            for (PsiField field : entityClass.getAllFields()) {
-                String fieldName = field.getName();
-                String str = Arrays.stream(Objects.requireNonNull(StringUtils.splitByCharacterTypeCamelCase(fieldName)))
-                        .reduce((s1, s2) -> s1.toLowerCase().concat("_").concat(s2.toLowerCase())).orElse("");
-
-                content.append("<result property=\"").append(fieldName).append("\" column=\"").append(str).append("\"");
-
-                // 如果是枚举类
-                String typeClassName = field.getType().getCanonicalText();
-                psiUtils.findClass(typeClassName).ifPresent(typeClass -> {
-                    if (typeClass.isEnum()) {
-                        content.append(" typeHandler=\"org.apache.ibatis.type.EnumOrdinalTypeHandler\"");
-                    }
-                });
+            List<Column> columnList = getColumns(entityClass);
+            for (Column column : columnList) {
+                String fieldName = column.property;
+                String str = column.name;
+
+                String result = getResultMapping(column);
+                content.append(result);
+                if (!column.lob) {
+                    listResults.append(result);
+                }
 
-                content.append("/>");
+                // 新增时版本号为空则从0开始，更新时间由数据库写入
+                String insertField = getParameter(column, "item.");
+                if (config.getWithVersion() && "version".equals(fieldName)) {
+                    insertField = "coalesce(#{item.version,jdbcType=BIGINT}, 0)";
+                } else if (isUpdateTime(column)) {
+                    insertField = "current_timestamp";
+                }
 
                 if (0 == columns.length()) {
                     columns.append("t1.").append(str);
                     insertColumns.append(str);
-                    insertFields.append("#{item.").append(fieldName).append("}");
+                    insertFields.append(insertField);
                 } else {
                     columns.append(",").append("t1.").append(str);
                     insertColumns.append(",").append(str);
-                    insertFields.append(",#{item.").append(fieldName).append("}");
+                    insertFields.append(",").append(insertField);
                 }
             }
 
             // 获取表名
-            String tableName = "tableName";
-            PsiAnnotation annotation = entityClass.getAnnotation("javax.persistence.Table");
-            if (null != annotation) {
-                PsiAnnotationMemberValue memberValue = annotation.findAttributeValue("name");
-                if (null != memberValue) {
-                    tableName = memberValue.getText();
-                }
-            }
-
-            tableName = tableName.replaceAll("\"", "");
+            String tableName = getTableName(entityClass);
 
             content.append("</resultMap>")
                     .append("<sql id=\"columns\">\n")
@@ -396,10 +564,36 @@ public class GeneratorAction extends MyAnAction {
                     .append(tableName)
                     .append(" t1 \n</sql>");
 
+            // 有大字段时列表查询使用不包含大字段的列及结果映射，大字段只在查询详情时返回
+            String listSql = "columns";
+            String listResultMap = "resultMap";
+            if (config.getWithLob()) {
+                listSql = "listColumns";
+                listResultMap = "listResultMap";
+                content.append("<resultMap id=\"listResultMap\" type=\"").append(dtoPackage).append(".").append(entityClasses.getDtoClass().getName())
+                        .append("\">").append(listResults).append("</resultMap>")
+                        .append("<sql id=\"listColumns\">\nselect \n")
+                        .append(columnList.stream().filter(column -> !column.lob).map(column -> "t1." + column.name).collect(Collectors.joining(",")))
+                        .append("\n from ")
+                        .append(tableName)
+                        .append(" t1 \n</sql>");
+            }
+
+            // 查询时指定了fields则只查询主键及指定的列，属性名由服务层校验
+            content.append("<sql id=\"selectColumns\">\n<choose>\n<when test=\"null != fields and !fields.isEmpty()\">\nselect t1.id");
+            for (Column column : columnList) {
+                if (!"id".equals(column.property)) {
+                    // 使用双引号，OGNL中单引号包含的单个字符为char类型
+                    content.append("<if test='fields.contains(\"").append(column.field.getName()).append("\")'>,t1.").append(column.name).append("</if>");
+                }
+            }
+            content.append("\n from ").append(tableName).append(" t1\n</when>\n<otherwise><include refid=\"").append(listSql)
+                    .append("\"/></otherwise>\n</choose>\n</sql>");
+
             content.append("<select id=\"query\" parameterType=\"")
                     .append(psiUtils.getPackageAndName(entityClasses.getQueryClass()))
                     .append("\" resultMap=\"resultMap\">")
-                    .append("<include refid=\"columns\"/>");
+                    .append("<include refid=\"selectColumns\"/>");
 
             if (config.getWithDeleted()) {
                 content.append("\n where deleted = 0");
@@ -415,8 +609,8 @@ public class GeneratorAction extends MyAnAction {
 
             content.append("\n<select id=\"findAll\" parameterType=\"")
                     .append(psiUtils.getPackageAndName(entityClasses.getQueryClass()))
-                    .append("\" resultMap=\"resultMap\">")
-                    .append("\n<include refid=\"columns\"/>");
+                    .append("\" resultMap=\"").append(listResultMap).append("\">")
+                    .append("\n<include refid=\"").append(listSql).append("\"/>");
 
             if (config.getWithDeleted()) {
                 content.append(" \nwhere deleted = 0");
@@ -430,6 +624,89 @@ public class GeneratorAction extends MyAnAction {
 
             content.append("\n</select>");
 
+            // 增加数据变更标识查询语句，数据条数、最后更新时间及版本号之和任意一个变化时标识变化
+            String changeTimeColumn = getChangeTimeColumn();
+            if (hasChangeStamp()) {
+                content.append("\n<select id=\"changeStamp\" resultType=\"java.lang.String\">")
+                        .append("\nselect concat(count(*)")
+                        .append(null != changeTimeColumn ? ", '-', coalesce(max(" + changeTimeColumn + "), '')" : "")
+                        .append(config.getWithVersion() ? ", '-', coalesce(sum(version), 0)" : "").append(") from ").append(tableName);
+                if (config.getWithDeleted()) {
+                    content.append(" where deleted = 0");
+                }
+                content.append("\n</select>");
+            }
+
+            // 增加增量同步查询语句，按(变更时间, id)分页，包括已逻辑删除的数据，调用方据此删除本地数据
+            if (null != changeTimeColumn) {
+                content.append("\n<select id=\"changesSince\" resultMap=\"resultMap\">")
+                        .append("\n<include refid=\"columns\"/>")
+                        .append("\n<if test=\"null != since\">where t1.").append(changeTimeColumn).append(" &gt; #{since} or (t1.")
+                        .append(changeTimeColumn).append(" = #{since} and t1.id &gt; #{cursorId})</if>")
+                        .append("\norder by t1.").append(changeTimeColumn).append(", t1.id limit #{limit}")
+                        .append("\n</select>");
+            }
+
+            // 增加游标查询语句，逐行读取结果；MySQL驱动只有fetchSize为Integer.MIN_VALUE时才逐行读取，其它数据库按批次读取
+            String fetchSize = "mysql".equals(config.getDialect()) ? String.valueOf(Integer.MIN_VALUE) : String.valueOf(config.getBatchSize());
+            content.append("\n<select id=\"streamAll\" parameterType=\"")
+                    .append(psiUtils.getPackageAndName(entityClasses.getQueryClass()))
+                    .append("\" resultMap=\"").append(listResultMap).append("\" fetchSize=\"").append(fetchSize).append("\" resultOrdered=\"true\">")
+                    .append("\n<include refid=\"").append(listSql).append("\"/>");
+            if (config.getWithDeleted()) {
+                content.append(" \nwhere deleted = 0");
+            }
+            content.append("\norder by t1.id\n</select>");
+
+            // 增加按主键批量查询语句，参数个数由服务层控制；不返回已逻辑删除的数据
+            content.append("\n<select id=\"findByIds\" resultMap=\"resultMap\">")
+                    .append("\n<include refid=\"columns\"/>")
+                    .append("\nwhere t1.id in <foreach collection=\"ids\" item=\"id\" open=\"(\" separator=\",\" close=\")\">#{id}</foreach>");
+            if (config.getWithDeleted()) {
+                content.append(" and t1.deleted = 0");
+            }
+            content.append("\n</select>");
+
+            // 增加快照加载语句，返回包括大字段在内的所有列，不返回已逻辑删除的数据
+            if (config.getWithSnapshot()) {
+                content.append("\n<select id=\"findSnapshot\" resultMap=\"resultMap\">")
+                        .append("\n<include refid=\"columns\"/>");
+                if (config.getWithDeleted()) {
+                    content.append(" \nwhere deleted = 0");
+                }
+                content.append("\norder by t1.id\n</select>");
+            }
+
+            // 增加分组统计语句
+            if (config.getWithAggregation()) {
+                content.append(getAggregationQueries(entityClasses, tableName));
+            }
+
+            // 增加树形结构的递归查询语句
+            if (config.getWithTree()) {
+                content.append(getTreeQueries(tableName, listSql, listResultMap));
+            }
+
+            // 增加全文检索语句，分页由服务层通过PageHelper处理
+            if (config.getWithSearch()) {
+                content.append(getSearchQuery(getSearchColumns(entityClass), tableName, listSql, listResultMap));
+                createSearchIndexScript(getSearchColumns(entityClass), tableName);
+                createDatabaseIdConfig();
+            }
+
+            // 增加关联查询语句，通过一次连接查询加载关联实体
+            if (config.getWithAssociation()) {
+                content.append(getAssociationQuery(entityClasses, columnList, tableName));
+            }
+
+            // 增加查询详情语句，返回包括大字段在内的所有列
+            if (config.getWithLob()) {
+                content.append("\n<select id=\"findDetail\" resultMap=\"resultMap\">")
+                        .append("\n<include refid=\"columns\"/>")
+                        .append("\nwhere t1.id = #{id}")
+                        .append("\n</select>");
+            }
+
             // 增加批量新增语句
             content.append("\n<insert id=\"batchAdd\" parameterType=\"")
                     .append(psiUtils.getPackageAndName(entityClasses.getDtoClass()))
@@ -445,6 +722,138 @@ public class GeneratorAction extends MyAnAction {
                     .append("\n</foreach></insert>")
             ;
 
+            // 增加批量新增或更新语句，按主键判断是否存在；创建时间只在新增时写入，更新时间的新增值为当前时间，更新时同样写入；
+            // 逻辑删除标识只由删除语句修改，更新时不写入，避免恢复已删除的数据或者写入空值
+            StringBuilder upsertValues = new StringBuilder("<foreach collection=\"list\" item=\"item\" open=\"\" close=\"\" separator=\",\">\n(")
+                    .append(insertFields.toString())
+                    .append(")\n</foreach>");
+            List<String> updateColumns = new ArrayList<>();
+            for (Column column : columnList) {
+                if (!"id".equals(column.property) && !"createTime".equals(column.property) && !"deleted".equals(column.property)
+                        && !isVersion(column)) {
+                    updateColumns.add(column.name);
+                }
+            }
+
+            content.append("\n<insert id=\"batchUpsert\" parameterType=\"")
+                    .append(psiUtils.getPackageAndName(entityClasses.getDtoClass()))
+                    .append("\">\n");
+            switch (config.getDialect()) {
+                case "postgresql":
+                    content.append("insert into ").append(tableName).append("(").append(insertColumns.toString()).append(") values ")
+                            .append(upsertValues).append("\non conflict (id) do update set ")
+                            .append(updateColumns.stream().map(c -> c + " = excluded." + c).collect(Collectors.joining(", ")));
+                    if (config.getWithVersion()) {
+                        content.append(", version = coalesce(").append(tableName).append(".version, 0) + 1");
+                    }
+                    break;
+                case "h2":
+                    // merge ... key(id)会整行覆盖，使用标准merge语句，已存在时只更新可更新的列
+                    content.append("merge into ").append(tableName).append(" t using (values ").append(upsertValues)
+                            .append(") s(").append(insertColumns.toString()).append(") on t.id = s.id")
+                            .append("\nwhen matched then update set ")
+                            .append(updateColumns.stream().map(c -> c + " = s." + c).collect(Collectors.joining(", ")));
+                    if (config.getWithVersion()) {
+                        content.append(", version = coalesce(t.version, 0) + 1");
+                    }
+                    content.append("\nwhen not matched then insert (").append(insertColumns.toString()).append(") values (")
+                            .append(Arrays.stream(insertColumns.toString().split(",")).map(c -> "s." + c).collect(Collectors.joining(", ")))
+                            .append(")");
+                    break;
+                default:
+                    content.append("insert into ").append(tableName).append("(").append(insertColumns.toString()).append(") values ")
+                            .append(upsertValues).append("\non duplicate key update ")
+                            .append(updateColumns.stream().map(c -> c + " = values(" + c + ")").collect(Collectors.joining(", ")));
+                    if (config.getWithVersion()) {
+                        content.append(", version = coalesce(version, 0) + 1");
+                    }
+            }
+            content.append("\n</insert>");
+
+            // 增加按主键全量更新语句，供批量执行器批量更新使用；创建时间及逻辑删除标识不随全量更新修改，更新时间写入当前时间
+            content.append("\n<update id=\"updateById\" parameterType=\"")
+                    .append(psiUtils.getPackageAndName(entityClasses.getDtoClass()))
+                    .append("\">\nupdate ")
+                    .append(tableName)
+                    .append(" set ");
+            String updateSets = columnList.stream()
+                    .filter(column -> updateColumns.contains(column.name))
+                    .map(column -> column.name + " = " + (isUpdateTime(column) ? "current_timestamp" : getParameter(column, "")))
+                    .collect(Collectors.joining(", "));
+            content.append(updateSets);
+            if (config.getWithVersion()) {
+                content.append(", version = coalesce(version, 0) + 1");
+            }
+            content.append("\nwhere id = #{id}\n</update>");
+
+            // 增加按版本号条件更新语句，版本号不一致时不更新，由服务层重新读取后重试；版本号为空的历史数据视为0
+            if (config.getWithVersion()) {
+                content.append("\n<update id=\"updateWithVersion\" parameterType=\"")
+                        .append(psiUtils.getPackageAndName(entityClasses.getDtoClass()))
+                        .append("\">\nupdate ")
+                        .append(tableName)
+                        .append(" set ")
+                        .append(updateSets)
+                        .append(", version = coalesce(version, 0) + 1\nwhere id = #{id} and coalesce(version, 0) = coalesce(#{version}, 0)\n</update>");
+            }
+
+            // 增加按主键部分更新语句，只更新非空字段，不需要预先查询；更新时间总是写入当前时间，创建时间及逻辑删除标识不允许修改
+            content.append("\n<update id=\"updateSelective\" parameterType=\"")
+                    .append(psiUtils.getPackageAndName(entityClasses.getDtoClass()))
+                    .append("\">\nupdate ")
+                    .append(tableName)
+                    .append("\n<set>");
+            for (Column column : columnList) {
+                if (isPatchable(column)) {
+                    // 关联实体需要先判断关联对象不为空
+                    content.append("\n<if test=\"").append(column.association ? "null != " + column.field.getName() + " and " : "")
+                            .append("null != ").append(column.property).append("\">")
+                            .append(column.name).append(" = ").append(getParameter(column, "")).append(",</if>");
+                }
+            }
+            if (config.getWithVersion()) {
+                content.append("\nversion = coalesce(version, 0) + 1,");
+            }
+            if (config.getWithUpdateTime()) {
+                content.append("\nupdate_time = current_timestamp,");
+            }
+            content.append("\n</set>\nwhere id = #{id}");
+            if (config.getWithDeleted()) {
+                content.append(" and deleted = 0");
+            }
+            if (config.getWithVersion()) {
+                // 传入了版本号时按版本号条件更新
+                content.append("\n<if test=\"null != version\"> and coalesce(version, 0) = #{version}</if>");
+            }
+            content.append("\n</update>");
+
+            // 增加批量删除语句，有deleted字段时为逻辑删除，同时更新变更时间，增量同步据此返回删除的数据
+            if (config.getWithDeleted()) {
+                content.append("\n<update id=\"batchDelete\">\nupdate ").append(tableName).append(" set deleted = 1")
+                        .append(config.getWithUpdateTime() ? ", update_time = current_timestamp" : "").append(" where id in ")
+                        .append("<foreach collection=\"ids\" item=\"id\" open=\"(\" separator=\",\" close=\")\">#{id}</foreach>\n</update>");
+            } else {
+                content.append("\n<delete id=\"batchDelete\">\ndelete from ").append(tableName).append(" where id in ")
+                        .append("<foreach collection=\"ids\" item=\"id\" open=\"(\" separator=\",\" close=\")\">#{id}</foreach>\n</delete>");
+            }
+
+            // 增加逻辑删除数据清理语句，按主键顺序分批查询，删除时再次检查deleted，避免误删已恢复的数据；
+            // 逻辑删除时写入的更新时间即为删除时间，删除后的修改只会推迟清理
+            if (config.getWithPurge()) {
+                String ids = "<foreach collection=\"ids\" item=\"id\" open=\"(\" separator=\",\" close=\")\">#{id}</foreach>";
+                content.append("\n<select id=\"findPurgeIds\" resultType=\"java.lang.Long\">")
+                        .append("\nselect id from ").append(tableName).append(" where deleted = 1 and ").append(getChangeTimeColumn())
+                        .append(" &lt; #{before} and id &gt; #{cursorId}\norder by id limit #{limit}\n</select>");
+                if (config.getPurgeArchive()) {
+                    content.append("\n<insert id=\"archiveByIds\">\ninsert into ").append(tableName).append("_archive (").append(insertColumns)
+                            .append(")\nselect ").append(insertColumns).append(" from ").append(tableName)
+                            .append(" where deleted = 1 and id in ").append(ids).append("\n</insert>");
+                    createArchiveTableScript(tableName);
+                }
+                content.append("\n<delete id=\"purgeByIds\">\ndelete from ").append(tableName).append(" where deleted = 1 and id in ")
+                        .append(ids).append("\n</delete>");
+            }
+
             content.append("</mapper>");
 
             psiFile = PsiFileFactory.getInstance(project).createFileFromText(fileName, XMLLanguage.INSTANCE,
@@ -453,10 +862,258 @@ public class GeneratorAction extends MyAnAction {
             psiDirectory.add(psiFile);
         }
 
-        createService(entityClasses);
+        createIngestor(entityClasses);
+        createPurger(entityClasses);
+        createSnapshot(entityClasses);
+    }
+
+    /**
+     * 创建逻辑删除数据清理组件，定时将逻辑删除超过保留期的数据物理删除，可以先复制到归档表；
+     * 按主键顺序分批处理，每批在一个短事务中完成，批次之间暂停，避免长时间持有锁以及从库复制延迟；
+     * 清理在独立的线程中执行，不占用定时任务线程，避免阻塞快照刷新等其它定时任务
+     *
+     * @param entityClasses 实体相关类集合
+     */
+    private void createPurger(EntityClasses entityClasses) {
+        if (!config.getWithPurge()) {
+            return;
+        }
+
+        String purgerName = entityClasses.getEntityName() + "Purger";
+        String propertyPrefix = "purge." + MyStringUtils.firstLetterToLower(entityClasses.getEntityName()) + ".";
+        String daoFieldName = StringUtils.uncapitalize(entityClasses.getDaoClass().getName());
+
+        String content = comment.getContent("逻辑删除数据清理") +
+                "\n@Component public class " + purgerName + " {" +
+                "private static final Logger LOGGER = LoggerFactory.getLogger(" + purgerName + ".class);" +
+                "\n@Resource private " + entityClasses.getDaoClass().getName() + " " + daoFieldName + ";" +
+                "\n@Resource private TransactionTemplate transactionTemplate;" +
+                "\n/** 逻辑删除后保留的天数 **/ @Value(\"${" + propertyPrefix + "retention-days:" + config.getPurgeRetention() + "}\") private int retentionDays;" +
+                "\n/** 每批处理的数据量 **/ @Value(\"${" + propertyPrefix + "chunk-size:" + config.getBatchSize() + "}\") private int chunkSize;" +
+                "\n/** 批次之间暂停的毫秒数 **/ @Value(\"${" + propertyPrefix + "pause:200}\") private long pause;" +
+                "\nprivate final AtomicBoolean running = new AtomicBoolean();" +
+                "\nprivate final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> { " +
+                "Thread thread = new Thread(runnable, \"" + purgerName + "\"); thread.setDaemon(true); return thread; });" +
+                "\n/** 定时清理，默认每天凌晨3点执行，需要启用EnableScheduling才会生效；上一次未执行完时跳过 **/" +
+                "@Scheduled(cron = \"${" + propertyPrefix + "cron:0 0 3 * * ?}\") public void schedule() { " +
+                "if (running.compareAndSet(false, true)) { executor.execute(this::purge); } }" +
+                "\n@PreDestroy public void stop() { executor.shutdownNow(); }" +
+                "\nprivate void purge() { " +
+                "LocalDateTime before = LocalDateTime.now().minusDays(retentionDays); long cursorId = 0L; int total = 0; " +
+                "try { while (true) { List<Long> ids = " + daoFieldName + ".findPurgeIds(before, cursorId, chunkSize); " +
+                "if (ids.isEmpty()) { break; } " +
+                "Integer count = transactionTemplate.execute(status -> { " +
+                (config.getPurgeArchive() ? daoFieldName + ".archiveByIds(ids); " : "") +
+                "return " + daoFieldName + ".purgeByIds(ids); }); " +
+                "total += null == count ? 0 : count; cursorId = ids.get(ids.size() - 1); " +
+                "if (ids.size() < chunkSize) { break; } Thread.sleep(pause); } } " +
+                "catch (InterruptedException e) { Thread.currentThread().interrupt(); } " +
+                "catch (RuntimeException e) { LOGGER.error(\"Purge failed\", e); } " +
+                "finally { running.set(false); LOGGER.info(\"Purged {} rows deleted before {}\", total, before); } }" +
+                "}";
+
+        ClassCreator.of(module).init(purgerName, content)
+                .importClass("javax.annotation.Resource")
+                .importClass("org.springframework.stereotype.Component")
+                .importClass("org.springframework.beans.factory.annotation.Value")
+                .importClass("org.springframework.scheduling.annotation.Scheduled")
+                .importClass("org.springframework.transaction.support.TransactionTemplate")
+                .importClass("org.slf4j.Logger")
+                .importClass("org.slf4j.LoggerFactory")
+                .importClass("java.time.LocalDateTime")
+                .importClass("java.util.List")
+                .importClass("java.util.concurrent.ExecutorService")
+                .importClass("java.util.concurrent.Executors")
+                .importClass("java.util.concurrent.atomic.AtomicBoolean")
+                .importClass("javax.annotation.PreDestroy")
+                .addTo(directoryMap.get("service"))
+                .and(purgerClass -> psiUtils.importClass(purgerClass, entityClasses.getDaoClass()));
+    }
+
+    /**
+     * 在resources/db目录下创建归档表脚本，归档表与原表结构一致
+     *
+     * @param tableName 表名
+     */
+    private void createArchiveTableScript(String tableName) {
+        String content;
+        switch (config.getDialect()) {
+            case "postgresql":
+                content = "create table if not exists " + tableName + "_archive (like " + tableName + " including all);\n";
+                break;
+            case "h2":
+                content = "create table if not exists " + tableName + "_archive as select * from " + tableName + " where 1 = 0;\n";
+                break;
+            default:
+                content = "create table if not exists " + tableName + "_archive like " + tableName + ";\n";
+        }
+
+        psiUtils.createResourceFile("db", tableName + "_archive.sql", "-- 逻辑删除数据归档表\n" + content);
+    }
+
+    /**
+     * 创建缓冲写入组件，适用于只新增不修改的日志、事件类实体
+     * 数据先进入有界的无锁队列，由后台线程在数量达到批量大小或者超过刷新间隔时通过batchAdd批量写入，关闭时写入剩余数据
+     *
+     * @param entityClasses 实体相关类集合
+     */
+    private void createIngestor(EntityClasses entityClasses) {
+        if (!GeneratorConfig.isEntityEnabled(config.getIngestEntities(), entityClasses.getEntityName())) {
+            return;
+        }
+
+        String dtoName = entityClasses.getDtoClass().getName();
+        String ingestorName = entityClasses.getEntityName() + "Ingestor";
+        String propertyPrefix = "ingest." + MyStringUtils.firstLetterToLower(entityClasses.getEntityName()) + ".";
+        String daoFieldName = StringUtils.uncapitalize(entityClasses.getDaoClass().getName());
+        // 服务与缓冲写入组件在同一个目录下，服务尚未创建，按名称引用
+        String serviceName = entityClasses.getEntityName() + "Service";
+        String serviceFieldName = StringUtils.uncapitalize(serviceName);
+
+        StringBuilder prepare = new StringBuilder();
+        if (config.getWithDeleted()) {
+            prepare.append("dto.setDeleted(false); ");
+        }
+        if (config.getWithCreateTime()) {
+            prepare.append("if (null == dto.getCreateTime()) { dto.setCreateTime(LocalDateTime.now()); } ");
+        }
+
+        String content = comment.getContent("缓冲写入") +
+                "\n@Component public class " + ingestorName + " {" +
+                "private static final Logger LOGGER = LoggerFactory.getLogger(" + ingestorName + ".class);" +
+                "@Resource private " + entityClasses.getDaoClass().getName() + " " + daoFieldName + ";" +
+                (config.getWithCache() ? "\n/** 写入新数据后清空列表缓存 **/ @Resource private CacheManager cacheManager;" : "") +
+                (config.getWithIdGenerator() ? "\n/** 主键由JPA主键生成器生成，写入前通过服务分配主键 **/ @Resource private " + serviceName + " " + serviceFieldName + ";" : "") +
+                "@Value(\"${" + propertyPrefix + "capacity:" + config.getIngestCapacity() + "}\") private int capacity;" +
+                "@Value(\"${" + propertyPrefix + "batch-size:" + config.getBatchSize() + "}\") private int batchSize;" +
+                "@Value(\"${" + propertyPrefix + "flush-interval:" + config.getIngestFlushInterval() + "}\") private long flushInterval;" +
+                "@Value(\"${" + propertyPrefix + "offer-timeout:5000}\") private long offerTimeout;" +
+                "private final ConcurrentLinkedQueue<" + dtoName + "> queue = new ConcurrentLinkedQueue<>();" +
+                "private final AtomicInteger size = new AtomicInteger();" +
+                "\n/** 正在提交中的调用数，停止时等待这些调用完成后再写入剩余数据 **/ private final AtomicInteger offering = new AtomicInteger();" +
+                "\n/** 写入失败而丢弃的数据量 **/ private final AtomicLong dropped = new AtomicLong();" +
+                "private volatile boolean running;" +
+                "private Thread flusher;" +
+                "\n@PostConstruct public void start() { running = true; flusher = new Thread(this::run, \"" + ingestorName + "\"); " +
+                "flusher.setDaemon(true); flusher.start(); }" +
+                "\n/** 提交数据，队列已满时返回false **/" +
+                "public boolean offer(" + dtoName + " dto) { offering.incrementAndGet(); try { " +
+                "if (!running) { throw new IllegalStateException(\"" + ingestorName + " is stopped\"); } " +
+                "if (size.incrementAndGet() > capacity) { size.decrementAndGet(); LockSupport.unpark(flusher); return false; } " +
+                prepare + "queue.offer(dto); if (size.get() >= batchSize) { LockSupport.unpark(flusher); } return true; } " +
+                "finally { offering.decrementAndGet(); } }" +
+                "\n/** 提交数据，队列已满时等待，超过offerTimeout毫秒仍无法提交时抛出异常 **/" +
+                "public void submit(" + dtoName + " dto) { long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(offerTimeout); " +
+                "while (!offer(dto)) { if (System.nanoTime() > deadline) { throw new RejectedExecutionException(\"" + ingestorName + " queue is full\"); } " +
+                "LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1)); } }" +
+                "\nprivate void run() { long interval = TimeUnit.MILLISECONDS.toNanos(flushInterval); long nextFlush = System.nanoTime() + interval; " +
+                "while (running) { if (size.get() >= batchSize || System.nanoTime() >= nextFlush) { flush(); nextFlush = System.nanoTime() + interval; } " +
+                "else { LockSupport.parkNanos(this, Math.max(0L, nextFlush - System.nanoTime())); } } flush(); }" +
+                "\n/** 将队列中的数据按批量大小分批写入 **/" +
+                "private void flush() { List<" + dtoName + "> batch = new ArrayList<>(batchSize); " + dtoName + " dto; " +
+                "while (null != (dto = queue.poll())) { size.decrementAndGet(); batch.add(dto); " +
+                "if (batch.size() >= batchSize) { write(batch); batch = new ArrayList<>(batchSize); } } " +
+                "if (!batch.isEmpty()) { write(batch); } }" +
+                "\nprivate void write(List<" + dtoName + "> batch) { try { " + (config.getWithIdGenerator() ? serviceFieldName + ".assignIds(batch); " : "")
+                + daoFieldName + ".batchAdd(batch); " + (config.getWithCache() ? "Cache listCache = cacheManager.getCache(\""
+                + getCacheName(entityClasses) + ":list\"); if (null != listCache) { listCache.clear(); } " : "") + "} " +
+                "catch (RuntimeException e) { onWriteFailure(batch, e); } }" +
+                "\n/** 批量写入失败时调用，默认记录丢弃的数据量；需要重试或者转存失败数据时覆盖该方法 **/" +
+                "protected void onWriteFailure(List<" + dtoName + "> batch, RuntimeException e) { " +
+                "LOGGER.error(\"Failed to write {} records, {} records dropped in total\", batch.size(), dropped.addAndGet(batch.size()), e); }" +
+                "\n/** 获取写入失败而丢弃的数据总量 **/" +
+                "public long getDropped() { return dropped.get(); }" +
+                "\n/** 停止后台线程，等待正在提交的调用完成后写入队列中剩余的数据 **/" +
+                "@PreDestroy public void stop() throws InterruptedException { running = false; " +
+                "while (0 != offering.get()) { Thread.yield(); } LockSupport.unpark(flusher); flusher.join(); flush(); }" +
+                "}";
+
+        ClassCreator.of(module).init(ingestorName, content)
+                .importClass("javax.annotation.Resource")
+                .importClass("javax.annotation.PostConstruct")
+                .importClass("javax.annotation.PreDestroy")
+                .importClass("org.springframework.stereotype.Component")
+                .importClass("org.springframework.beans.factory.annotation.Value")
+                .importClass("org.slf4j.Logger")
+                .importClass("org.slf4j.LoggerFactory")
+                .importClass("java.util.List")
+                .importClass("java.util.ArrayList")
+                .importClass("java.util.concurrent.ConcurrentLinkedQueue")
+                .importClass("java.util.concurrent.RejectedExecutionException")
+                .importClass("java.util.concurrent.TimeUnit")
+                .importClass("java.util.concurrent.atomic.AtomicInteger")
+                .importClass("java.util.concurrent.atomic.AtomicLong")
+                .importClass("java.util.concurrent.locks.LockSupport")
+                .importClassIf("java.time.LocalDateTime", () -> config.getWithCreateTime())
+                .importClassIf("org.springframework.cache.Cache", () -> config.getWithCache())
+                .importClassIf("org.springframework.cache.CacheManager", () -> config.getWithCache())
+                .addTo(directoryMap.get("service"))
+                .and(ingestorClass -> psiUtils.importClass(ingestorClass, entityClasses.getDaoClass(), entityClasses.getDtoClass()));
+    }
+
+    /**
+     * 创建内存快照，将整表加载到内存中的不可变结构，写操作提交后及定时刷新，适用于数据量小的字典类实体
+     *
+     * @param entityClasses 实体相关类集合
+     */
+    private void createSnapshot(EntityClasses entityClasses) {
+        if (!config.getWithSnapshot()) {
+            createService(entityClasses);
+            return;
+        }
+
+        String dtoName = entityClasses.getDtoClass().getName();
+        String snapshotName = entityClasses.getEntityName() + "Snapshot";
+        String refreshProperty = "${snapshot." + MyStringUtils.firstLetterToLower(entityClasses.getEntityName()) + ".refresh:"
+                + config.getSnapshotRefresh() + "}";
+        String content = comment.getContent("内存快照") +
+                "\n@Component public class " + snapshotName + " {" +
+                "@Resource private " + entityClasses.getDaoClass().getName() + " dao;" +
+                "private volatile Data data = new Data(new " + dtoName + "[0]);" +
+                "\n@PostConstruct public void init() { refresh(); }" +
+                "\n/** 从数据库重新加载未删除的数据并整体替换，需要启用EnableScheduling定时刷新才会生效 **/" +
+                "@Scheduled(fixedDelayString = \"" + refreshProperty + "\", initialDelayString = \"" + refreshProperty + "\")" +
+                "public synchronized void refresh() { List<" + dtoName + "> list = dao.findSnapshot(); " +
+                "data = new Data(list.toArray(new " + dtoName + "[0])); }" +
+                "\n/** 在当前事务提交后刷新，没有事务时立即刷新 **/" +
+                "public void refreshAfterCommit() { if (TransactionSynchronizationManager.isSynchronizationActive()) { " +
+                "TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() { " +
+                "@Override public void afterCommit() { refresh(); } }); } else { refresh(); } }" +
+                "\n/** 获取所有数据，返回的列表及对象均为共享数据，不能修改 **/" +
+                "public List<" + dtoName + "> findAll() { return data.list; }" +
+                "\n/** 根据主键获取数据，不存在时返回null **/" +
+                "public " + dtoName + " get(Long id) { return data.idMap.get(id); }" +
+                "\nprivate static final class Data { private final List<" + dtoName + "> list; private final Map<Long, " + dtoName + "> idMap;" +
+                "private Data(" + dtoName + "[] array) { this.list = Collections.unmodifiableList(Arrays.asList(array)); " +
+                "Map<Long, " + dtoName + "> map = new HashMap<>(array.length * 2); " +
+                "for (" + dtoName + " dto : array) { map.put(dto.getId(), dto); } this.idMap = Collections.unmodifiableMap(map); } }" +
+                "}";
+
+        ClassCreator.of(module).init(snapshotName, content)
+                .importClass("javax.annotation.Resource")
+                .importClass("javax.annotation.PostConstruct")
+                .importClass("org.springframework.stereotype.Component")
+                .importClass("org.springframework.scheduling.annotation.Scheduled")
+                .importClass("org.springframework.transaction.support.TransactionSynchronizationManager")
+                .importClass("org.springframework.transaction.support.TransactionSynchronization")
+                .importClass("java.util.List")
+                .importClass("java.util.Map")
+                .importClass("java.util.HashMap")
+                .importClass("java.util.Arrays")
+                .importClass("java.util.Collections")
+                .addTo(directoryMap.get("service"))
+                .and(snapshotClass -> {
+                    psiUtils.importClass(snapshotClass, entityClasses.getDaoClass(), entityClasses.getDtoClass());
+                    createService(entityClasses.setSnapshotClass(snapshotClass));
+                });
     }
 
     private void createService(EntityClasses entityClasses) {
+        if (config.getWithTree() && null == entityClasses.getTreeNodeClass()) {
+            createTreeNodeClass(entityClasses);
+            return;
+        }
+
         if (!config.getWithInterface()) {
             // 不创建接口了
             createServiceImpl(entityClasses);
@@ -471,7 +1128,33 @@ public class GeneratorAction extends MyAnAction {
                 "{" +
                 "void save(" + entityClasses.getDtoClass().getName() + " dto); " +
                 "\nvoid save(List<" + entityClasses.getDtoClass().getName() + "> dtos); " +
-                "\nvoid delete(Long id);" + "Optional<" + entityClasses.getDtoClass().getName() + "> findOne(Long id); " +
+                "\nvoid delete(Long id);" +
+                "\nvoid batchDelete(List<Long> ids);" +
+                "\nvoid patch(Long id, " + entityClasses.getDtoClass().getName() + " dto);" +
+                "\nvoid batchUpsert(List<" + entityClasses.getDtoClass().getName() + "> dtos);" +
+                (config.getWithIdGenerator() ? "\nvoid assignIds(List<" + entityClasses.getDtoClass().getName() + "> dtos);" : "") +
+                "\nvoid batchUpdate(List<" + entityClasses.getDtoClass().getName() + "> dtos);" +
+                "\nList<" + entityClasses.getDtoClass().getName() + "> findByIds(Collection<Long> ids);" +
+                "\nMap<Long, " + entityClasses.getDtoClass().getName() + "> findMapByIds(Collection<Long> ids);" +
+                "\nvoid streamAll(" + entityClasses.getQueryClass().getName() + " query, Consumer<" + entityClasses.getDtoClass().getName() + "> consumer);" +
+                (config.getWithVersion() ? "\n" + entityClasses.getDtoClass().getName() + " updateWithRetry(Long id, UnaryOperator<"
+                        + entityClasses.getDtoClass().getName() + "> modifier);" : "") +
+                (config.getWithLob() ? "\nOptional<" + entityClasses.getDtoClass().getName() + "> findDetail(Long id);"
+                        + "\nList<" + entityClasses.getDtoClass().getName() + "> findAllWithoutLob();" : "") +
+                (hasChangeStamp() ? "\nString changeStamp();" : "") +
+                (null != getChangeTimeColumn() ? "\nList<" + entityClasses.getDtoClass().getName()
+                        + "> changesSince(LocalDateTime since, Long cursorId, int limit);" : "") +
+                (config.getWithAssociation() ? "\nList<" + entityClasses.getDtoClass().getName() + "> findWithAssociations("
+                        + entityClasses.getQueryClass().getName() + " query);" : "") +
+                (config.getWithSearch() ? "\nPageInfo<" + entityClasses.getDtoClass().getName()
+                        + "> search(String keyword, Integer page, Integer size);" : "") +
+                (config.getWithTree() ? "\nList<TreeNode<" + entityClasses.getDtoClass().getName() + ">> findTree(Long rootId);"
+                        + "\nList<" + entityClasses.getDtoClass().getName() + "> findAncestors(Long id);" : "") +
+                getEnumColumns(entityClasses.getEntityClass()).stream()
+                        .map(column -> "\nList<AggregateBucket> " + getCountMethod(column) + "();")
+                        .collect(Collectors.joining()) +
+                (config.getWithCreateTime() ? "\nList<AggregateBucket> countByDay(LocalDateTime from, LocalDateTime to);"
+                        + "\nList<AggregateBucket> countByMonth(LocalDateTime from, LocalDateTime to);" : "") + "Optional<" + entityClasses.getDtoClass().getName() + "> findOne(Long id); " +
                 "\nList<" + entityClasses.getDtoClass().getName() + "> findAll(); " +
                 "\nList<" + entityClasses.getDtoClass().getName() + "> query(" + entityClasses.getQueryClass().getName() + " query); " +
                 "\nPageInfo<" + entityClasses.getDtoClass().getName() + "> pageQuery(" + entityClasses.getQueryClass().getName() + " query); ";
@@ -487,14 +1170,19 @@ public class GeneratorAction extends MyAnAction {
                 .importClass(entityClasses.dtoClass)
                 .importClass("java.util.Optional")
                 .importClass("java.util.List")
+                .importClass("java.util.Collection")
+                .importClass("java.util.Map")
+                .importClassIf("java.util.function.UnaryOperator", () -> config.getWithVersion())
+                .importClass("java.util.function.Consumer")
+                .importClassIf("java.time.LocalDateTime", () -> null != getChangeTimeColumn())
                 .importClass("com.github.pagehelper.PageInfo")
                 .importClassIf("Workbook", () -> config.getExcelFunc())
                 .importClassIf("ExcelColumn", () -> config.getExcelFunc())
                 .importClassIf("MultipartFile", () -> config.getExcelFunc())
                 .addTo(directoryMap.get("service"))
                 .and(serviceClass -> {
-                    psiUtils.importClass(serviceClass, entityClasses.getQueryClass());
-                    psiUtils.importClass(serviceClass, entityClasses.getQueryClass());
+                    psiUtils.importClass(serviceClass, entityClasses.getQueryClass(), entityClasses.getTreeNodeClass(),
+                            entityClasses.getAggregateBucketClass());
                     createServiceImpl(entityClasses.setServiceClass(serviceClass));
                 });
     }
@@ -527,6 +1215,7 @@ public class GeneratorAction extends MyAnAction {
 
         content.append("{");
 
+        String daoFieldName = StringUtils.uncapitalize(entityClasses.getDaoClass().getName());
         if (!config.getWithSuper()) {
             PsiClass repositoryClass = entityClasses.getRepositoryClass();
             String saveAllMethod = "save";
@@ -534,23 +1223,73 @@ public class GeneratorAction extends MyAnAction {
                 saveAllMethod = "saveAll";
             }
 
-            String daoFieldName = StringUtils.uncapitalize(entityClasses.getDaoClass().getName());
-
-            content.append("@Resource private ").append(entityClasses.getMapperClass().getName()).append(" mapper; \n")
+            content.append("\n/** 批量操作每批数据量，需与spring.jpa.properties.hibernate.jdbc.batch_size保持一致 **/ private static final int BATCH_SIZE = ")
+                    .append(config.getBatchSize()).append(";")
+                    .append("@Resource private ").append(entityClasses.getMapperClass().getName()).append(" mapper; \n")
                     .append("\n@Resource private ").append(entityClasses.getRepositoryClass().getName()).append(" repository; \n")
                     .append("\n@Resource private ").append(entityClasses.getDaoClass().getName()).append(" ").append(daoFieldName).append("; \n")
-                    .append("\n @Transactional public void save(").append(entityClasses.getDtoClass().getName()).append(" dto) { repository.save(mapper.toEntity(dto));}")
-                    .append("\n @Transactional  public void save(List<").append(entityClasses.getDtoClass().getName()).append("> dtos) { repository.").append(
-                    saveAllMethod).append("(mapper.toEntity(dtos)); }")
-                    .append("\n @Transactional  public void delete(Long id) { repository.delete(id); }")
-                    .append("\n @Transactional(readOnly = true)  public Optional<").append(entityClasses.getDtoClass().getName()).append(
-                    "> findOne(Long id) { return Optional.ofNullable(mapper.toDto(repository.findOne(id))); }")
-                    .append("\n @Transactional(readOnly = true) public List<").append(entityClasses.getDtoClass().getName()).append(
-                    "> findAll() { return mapper.toDto(repository.findAll()); }")
-                    .append("\n @Transactional(readOnly = true) public List<").append(entityClasses.getDtoClass().getName()).append("> query(")
-                    .append(entityClasses.getQueryClass().getName()).append(" query) { return ").append(daoFieldName).append(".query(query);}")
+                    .append("\n").append(getCacheAnnotation(entityClasses, "save"))
+                    .append(" @Transactional public void save(").append(entityClasses.getDtoClass().getName()).append(" dto) { ")
+                    .append(getUpdateTimeStatement("dto")).append(getSnapshotRefreshStatement()).append("repository.save(mapper.toEntity(dto));}")
+                    .append("\n @Transactional  public void save(List<").append(entityClasses.getDtoClass().getName()).append("> dtos) { ")
+                    .append(getCacheEvictStatement(entityClasses, "dtos")).append(getSnapshotRefreshStatement());
+            if (config.getWithUpdateTime()) {
+                content.append("LocalDateTime now = LocalDateTime.now(); dtos.forEach(dto -> dto.setUpdateTime(now)); ");
+            }
+            if (config.getWithIdentity()) {
+                content.append("repository.").append(saveAllMethod).append("(mapper.toEntity(dtos)); }");
+            } else {
+                // 主键不是IDENTITY时Hibernate可以批量插入，分批保存并flush后清空持久化上下文，避免一次性在其中堆积所有实体
+                content.append("List<").append(entityClasses.getEntityClassName()).append("> entities = mapper.toEntity(dtos); ")
+                        .append("for (int i = 0; i < entities.size(); i += BATCH_SIZE) { repository.").append(saveAllMethod)
+                        .append("(entities.subList(i, Math.min(i + BATCH_SIZE, entities.size()))); repository.flush(); entityManager.clear(); } }");
+            }
+
+            // 有deleted字段时与批量删除一致使用逻辑删除
+            content.append("\n").append(getCacheAnnotation(entityClasses, "delete"))
+                    .append(" @Transactional  public void delete(Long id) { ").append(getSnapshotRefreshStatement())
+                    .append(config.getWithDeleted() ? daoFieldName + ".batchDelete(Collections.singletonList(id)); }" : "repository.delete(id); }");
+            if (config.getWithSnapshot()) {
+                // 快照实体直接从内存中读取
+                content.append("\n public Optional<").append(entityClasses.getDtoClass().getName())
+                        .append("> findOne(Long id) { return Optional.ofNullable(snapshot.get(id)); }")
+                        .append("\n public List<").append(entityClasses.getDtoClass().getName())
+                        .append("> findAll() { return snapshot.findAll(); }");
+            } else {
+                content.append("\n").append(getCacheAnnotation(entityClasses, "findOne"))
+                        .append(" @Transactional(readOnly = true)  public Optional<").append(entityClasses.getDtoClass().getName());
+                if (getGraphAssociations(entityClasses.getEntityClass()).isEmpty()) {
+                    content.append("> findOne(Long id) { return Optional.ofNullable(mapper.toDto(repository.findOne(id))); }");
+                } else {
+                    // 通过实体图一次加载关联实体，避免转换时逐个延迟加载
+                    content.append("> findOne(Long id) { return repository.findWithAssociationsById(id).map(mapper::toDto); }");
+                }
+                content
+                        .append("\n").append(getCacheAnnotation(entityClasses, "findAll"))
+                        .append(" @Transactional(readOnly = true) public List<").append(entityClasses.getDtoClass().getName()).append("> findAll() { ");
+                if (config.getWithAssociation()) {
+                    // 有关联实体时通过连接查询一次获取
+                    content.append("return ").append(daoFieldName).append(".findWithAssociations(new ").append(entityClasses.getQueryClass().getName()).append("()); }");
+                } else if (!getGraphAssociations(entityClasses.getEntityClass()).isEmpty()) {
+                    // 无法连接查询的关联(如多对多)通过实体图一次加载
+                    content.append("return mapper.toDto(repository.findWithAssociationsBy()); }");
+                } else {
+                    content.append("return mapper.toDto(repository.findAll()); }");
+                }
+            }
+
+            // 可以通过fields指定返回的属性
+            content.append("\nprivate static final Set<String> QUERY_FIELDS = new HashSet<>(Arrays.asList(")
+                    .append(getColumns(entityClasses.getEntityClass()).stream().map(column -> "\"" + column.field.getName() + "\"").collect(Collectors.joining(", ")))
+                    .append("));")
+                    .append("\nprivate void checkFields(").append(entityClasses.getQueryClass().getName()).append(" query) { ")
+                    .append("if (null != query.getFields()) { for (String field : query.getFields()) { if (!QUERY_FIELDS.contains(field)) { ")
+                    .append("throw new IllegalArgumentException(\"Unknown field: \" + field); } } } }");
+
+            content.append("\n @Transactional(readOnly = true) public List<").append(entityClasses.getDtoClass().getName()).append("> query(")
+                    .append(entityClasses.getQueryClass().getName()).append(" query) { checkFields(query); return ").append(daoFieldName).append(".query(query);}")
                     .append("\n @Transactional(readOnly = true) public PageInfo<").append(entityClasses.getDtoClass().getName()).append("> pageQuery(").append(
-                    entityClasses.getQueryClass().getName()).append(" query) {")
+                    entityClasses.getQueryClass().getName()).append(" query) { checkFields(query); ")
                     .append("if (null != query.getSize() && null != query.getPage()) {PageHelper.startPage(query.getPage(), query.getSize()); }")
                     .append("return new PageInfo<>(").append(daoFieldName).append(".query(query));}");
 
@@ -558,17 +1297,27 @@ public class GeneratorAction extends MyAnAction {
                 content.append("\nprivate List<ExcelColumn<").append(entityClasses.getDtoClass().getName())
                         .append(">> getExcelColumns(){return ExcelUtils.initColumnsFromClass(").append(entityClasses.dtoClass.getName()).append(".class); }")
                         .append("\n public Workbook downloadTemplate() { return ExcelUtils.createExcelGenerator(getExcelColumns()).getWorkbook();}")
-                        .append("\n public void upload(MultipartFile file) {ExcelUtils.createExcelReader(file, getExcelColumns(), ")
-                        .append(entityClasses.getDtoClass().getName()).append(".class).setErrorProcessor(sheet->{}).read(this::save); }")
+                        .append("\n public void upload(MultipartFile file) {").append(config.getWithCache() ? "List<Long> ids = new ArrayList<>(); " : "")
+                        .append("ExcelUtils.createExcelReader(file, getExcelColumns(), ")
+                        .append(entityClasses.getDtoClass().getName()).append(".class).setErrorProcessor(sheet->{}).read(")
+                        // 内部调用不经过代理，缓存注解不生效，读取完成后显式清除缓存
+                        .append(config.getWithCache() ? "dto -> { if (null != dto.getId()) { ids.add(dto.getId()); } save(dto); }); evictCache(ids); }" : "this::save); }")
                         .append("\n@Override public Workbook download(").append(entityClasses.getQueryClass().getName()).append(" query) {List<")
                         .append(entityClasses.getDtoClass().getName()).append("> dataList = query(query); return ExcelUtils.createExcelGenerator(getExcelColumns(), dataList).getWorkbook();} ");
             }
         } else {
+            content.append("\nprivate static final int BATCH_SIZE = ").append(config.getBatchSize()).append(";")
+                    .append("\n@Resource private ").append(entityClasses.getDaoClass().getName()).append(" ").append(daoFieldName).append("; \n");
+
             // 删除方法使用逻辑删除
             if (config.getWithDeleted()) {
-                content.append("@Override public void delete(Long id) {repository.findById(id).ifPresent(item -> {item.setDeleted(true); repository.save(item); }); }");
+                content.append(getCacheAnnotation(entityClasses, "delete"))
+                        .append("@Override public void delete(Long id) {").append(getSnapshotRefreshStatement())
+                        .append("repository.findById(id).ifPresent(item -> {item.setDeleted(true); ").append(getUpdateTimeStatement("item"))
+                        .append("repository.save(item); }); }");
 
-                content.append("@Override public ")
+                content.append(getCacheAnnotation(entityClasses, "saveAndPut"))
+                        .append("@Override public ")
                         .append(entityClasses.dtoClass.getName())
                         .append(" save(")
                         .append(entityClasses.dtoClass.getName())
@@ -578,32 +1327,301 @@ public class GeneratorAction extends MyAnAction {
                     content.append("dto.setCreateTime(LocalDateTime.now());");
                 }
 
-                content.append(" } return super.save(dto); }");
+                content.append(" } ").append(getUpdateTimeStatement("dto")).append(getSnapshotRefreshStatement()).append("return super.save(dto); }");
 
             } else if (config.getWithCreateTime()) {
-                content.append("@Override public ")
+                content.append(getCacheAnnotation(entityClasses, "saveAndPut"))
+                        .append("@Override public ")
+                        .append(entityClasses.dtoClass.getName())
+                        .append(" save(")
+                        .append(entityClasses.dtoClass.getName())
+                        .append(" dto) {if (null == dto.getId()) { dto.setCreateTime(LocalDateTime.now()); } ")
+                        .append(getUpdateTimeStatement("dto")).append(getSnapshotRefreshStatement()).append("return super.save(dto); }");
+            } else if (config.getWithCache() || config.getWithSnapshot() || config.getWithUpdateTime()) {
+                content.append(getCacheAnnotation(entityClasses, "saveAndPut"))
+                        .append("@Override public ")
                         .append(entityClasses.dtoClass.getName())
                         .append(" save(")
                         .append(entityClasses.dtoClass.getName())
-                        .append(" dto) {if (null == dto.getId()) { dto.setCreateTime(LocalDateTime.now()); } return super.save(dto); }");
+                        .append(" dto) { ").append(getUpdateTimeStatement("dto")).append(getSnapshotRefreshStatement()).append("return super.save(dto); }");
+            }
+
+            // 使用缓存或者快照时需要覆盖父类的删除方法以清除缓存、刷新快照
+            if (!config.getWithDeleted() && (config.getWithCache() || config.getWithSnapshot())) {
+                content.append(getCacheAnnotation(entityClasses, "delete"))
+                        .append("@Override public void delete(Long id) { ").append(getSnapshotRefreshStatement()).append("super.delete(id); }");
+            }
+
+            // 批量保存同样需要清除缓存、刷新快照、写入更新时间
+            if (config.getWithCache() || config.getWithSnapshot() || config.getWithUpdateTime()) {
+                content.append("\n@Override @Transactional public void save(List<").append(entityClasses.getDtoClass().getName())
+                        .append("> dtos) { ").append(getCacheEvictStatement(entityClasses, "dtos")).append(getSnapshotRefreshStatement())
+                        .append(config.getWithUpdateTime() ? "LocalDateTime now = LocalDateTime.now(); dtos.forEach(dto -> dto.setUpdateTime(now)); " : "")
+                        .append("super.save(dtos); }");
+            }
+
+            // 快照实体直接从内存中读取
+            if (config.getWithSnapshot()) {
+                content.append("\n@Override public Optional<").append(entityClasses.getDtoClass().getName())
+                        .append("> findOne(Long id) { return Optional.ofNullable(snapshot.get(id)); }")
+                        .append("\n@Override public List<").append(entityClasses.getDtoClass().getName())
+                        .append("> findAll() { return snapshot.findAll(); }");
+            }
+        }
+
+        if (config.getWithSnapshot()) {
+            content.append("\n@Resource private ").append(entityClasses.getSnapshotClass().getName()).append(" snapshot;");
+        }
+
+        if (config.getWithCache()) {
+            // 批量操作按主键逐个清除缓存，并清空列表缓存
+            String cacheName = getCacheName(entityClasses);
+            content.append("\n@Resource private CacheManager cacheManager;")
+                    .append("\nprivate void evictCache(Collection<Long> ids) { Cache cache = cacheManager.getCache(\"").append(cacheName)
+                    .append("\"); if (null != cache) { ids.forEach(cache::evict); } Cache listCache = cacheManager.getCache(\"")
+                    .append(cacheName).append(":list\"); if (null != listCache) { listCache.clear(); } }");
+        }
+
+        // 批量删除，按批次执行单条update/delete语句
+        content.append("\n @Transactional public void batchDelete(List<Long> ids) { ").append(getCacheEvictStatement(entityClasses, null))
+                .append(getSnapshotRefreshStatement())
+                .append("for (int i = 0; i < ids.size(); i += BATCH_SIZE) { ")
+                .append(daoFieldName).append(".batchDelete(ids.subList(i, Math.min(i + BATCH_SIZE, ids.size()))); } }");
+
+        // 部分更新，只写入非空字段；没有可写入的字段时拒绝，更新行数为0时数据不存在或者版本号不一致
+        List<Column> patchColumns = getColumns(entityClasses.getEntityClass()).stream().filter(this::isPatchable).collect(Collectors.toList());
+        String emptyPatchCheck = "";
+        if (patchColumns.stream().noneMatch(column -> column.field.getType() instanceof PsiPrimitiveType)) {
+            emptyPatchCheck = "if (" + patchColumns.stream().map(column -> "null == dto.get" + StringUtils.capitalize(column.field.getName()) + "()")
+                    .collect(Collectors.joining(" && ")) + ") { throw new IllegalArgumentException(\"No field to update\"); } ";
+        }
+        content.append("\n").append(getCacheAnnotation(entityClasses, "delete"))
+                .append(" @Transactional public void patch(Long id, ").append(entityClasses.getDtoClass().getName())
+                .append(" dto) { ").append(patchColumns.isEmpty() ? "throw new IllegalArgumentException(\"No field to update\"); }" : emptyPatchCheck
+                        + "dto.setId(id); " + getSnapshotRefreshStatement() + "if (0 == " + daoFieldName + ".updateSelective(dto)) { "
+                        + (config.getWithVersion() ? "if (null != dto.getVersion() && !" + daoFieldName + ".findByIds(Collections.singletonList(id)).isEmpty()) { "
+                        + "throw new OptimisticLockingFailureException(\"" + entityClasses.getEntityName() + " was updated concurrently\"); } " : "")
+                        + "throw new EmptyResultDataAccessException(1); } }");
+
+        if ((!config.getWithSuper() && !config.getWithIdentity()) || config.getWithIdGenerator()) {
+            content.append("\n@PersistenceContext private EntityManager entityManager;");
+        }
+
+        // 主键由JPA主键生成器生成时，MyBatis新增前使用同一个生成器分配主键，与JPA保存的数据不会冲突
+        if (config.getWithIdGenerator()) {
+            content.append("\n/** 为主键为空的数据分配主键，通过MyBatis批量新增前调用 **/")
+                    .append(" @Transactional public void assignIds(List<").append(entityClasses.getDtoClass().getName()).append("> dtos) { ")
+                    .append("SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class); ")
+                    .append("IdentifierGenerator generator = session.getFactory().getMetamodel().entityPersister(")
+                    .append(entityClasses.getEntityClassName()).append(".class).getIdentifierGenerator(); ")
+                    .append("for (").append(entityClasses.getDtoClass().getName()).append(" dto : dtos) { if (null == dto.getId()) { ")
+                    .append("dto.setId(((Number) generator.generate(session, null)).longValue()); } } }");
+        }
+
+        // 批量新增或更新，按批次执行多行upsert语句
+        content.append("\n @Transactional public void batchUpsert(List<").append(entityClasses.getDtoClass().getName())
+                .append("> dtos) { ").append(getCacheEvictStatement(entityClasses, "dtos")).append(getSnapshotRefreshStatement())
+                .append(config.getWithIdGenerator() ? "assignIds(dtos); " : "")
+                .append("for (int i = 0; i < dtos.size(); i += BATCH_SIZE) { ")
+                .append(daoFieldName).append(".batchUpsert(dtos.subList(i, Math.min(i + BATCH_SIZE, dtos.size()))); } }");
+
+        // 批量更新，使用MyBatis批量执行器按JDBC批次提交
+        content.append("\n@Resource private SqlSessionFactory sqlSessionFactory;")
+                .append("\n @Transactional public void batchUpdate(List<").append(entityClasses.getDtoClass().getName())
+                .append("> dtos) { ").append(getCacheEvictStatement(entityClasses, "dtos")).append(getSnapshotRefreshStatement())
+                .append("try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) { ")
+                .append(entityClasses.getDaoClass().getName()).append(" batchDao = sqlSession.getMapper(")
+                .append(entityClasses.getDaoClass().getName()).append(".class); ")
+                .append(config.getWithVersion() ? "for (int i = 0; i < dtos.size(); i++) { batchDao.updateWithVersion(dtos.get(i)); "
+                        + "if (0 == (i + 1) % BATCH_SIZE) { checkUpdateCounts(sqlSession.flushStatements()); } } checkUpdateCounts(sqlSession.flushStatements()); } }"
+                        : "for (int i = 0; i < dtos.size(); i++) { batchDao.updateById(dtos.get(i)); "
+                        + "if (0 == (i + 1) % BATCH_SIZE) { sqlSession.flushStatements(); } } sqlSession.flushStatements(); } }");
+        if (config.getWithVersion()) {
+            // 版本号不一致时更新行数为0，抛出异常回滚整个批次；驱动无法返回行数(SUCCESS_NO_INFO)时不检查
+            content.append("\nprivate void checkUpdateCounts(List<BatchResult> results) { for (BatchResult result : results) { ")
+                    .append("for (int count : result.getUpdateCounts()) { if (0 == count) { throw new OptimisticLockingFailureException(\"")
+                    .append(entityClasses.getEntityName()).append(" was updated concurrently\"); } } } }");
+        }
+
+        // 按主键批量查询，去重后按in参数上限分批查询
+        String dtoName = entityClasses.getDtoClass().getName();
+        content.append("\nprivate static final int IN_SIZE = ").append(config.getInSize()).append(";");
+        if (config.getWithCache()) {
+            // 先逐个从实体缓存中读取，只查询未命中的主键；有关联实体时批量查询的结果不含关联数据，不放入缓存
+            boolean putCache = getGraphAssociations(entityClasses.getEntityClass()).isEmpty();
+            content.append("\n @Transactional(readOnly = true) public List<").append(dtoName).append("> findByIds(Collection<Long> ids) { ")
+                    .append("List<Long> idList = new ArrayList<>(new LinkedHashSet<>(ids)); Map<Long, ").append(dtoName)
+                    .append("> found = new HashMap<>(idList.size() * 2); List<Long> misses = new ArrayList<>(); ")
+                    .append("Cache cache = cacheManager.getCache(\"").append(getCacheName(entityClasses)).append("\"); ")
+                    .append("for (Long id : idList) { ").append(dtoName).append(" cached = null == cache ? null : cache.get(id, ").append(dtoName)
+                    .append(".class); if (null == cached) { misses.add(id); } else { found.put(id, cached); } } ")
+                    .append("for (int i = 0; i < misses.size(); i += IN_SIZE) { for (").append(dtoName).append(" dto : ").append(daoFieldName)
+                    .append(".findByIds(misses.subList(i, Math.min(i + IN_SIZE, misses.size())))) { found.put(dto.getId(), dto); ")
+                    .append(putCache ? "if (null != cache) { cache.put(dto.getId(), dto); } " : "").append("} } ")
+                    .append("List<").append(dtoName).append("> result = new ArrayList<>(found.size()); ")
+                    .append("for (Long id : idList) { ").append(dtoName).append(" dto = found.get(id); if (null != dto) { result.add(dto); } } return result; }");
+        } else {
+            content.append("\n @Transactional(readOnly = true) public List<").append(dtoName).append("> findByIds(Collection<Long> ids) { ")
+                    .append("List<Long> idList = new ArrayList<>(new LinkedHashSet<>(ids)); List<").append(dtoName).append("> result = new ArrayList<>(idList.size()); ")
+                    .append("for (int i = 0; i < idList.size(); i += IN_SIZE) { result.addAll(").append(daoFieldName)
+                    .append(".findByIds(idList.subList(i, Math.min(i + IN_SIZE, idList.size())))); } return result; }");
+        }
+        content
+                .append("\n @Transactional(readOnly = true) public Map<Long, ").append(dtoName).append("> findMapByIds(Collection<Long> ids) { ")
+                .append("Map<Long, ").append(dtoName).append("> result = new HashMap<>(ids.size() * 2); ")
+                .append("for (").append(dtoName).append(" dto : findByIds(ids)) { result.put(dto.getId(), dto); } return result; }");
+
+        // 游标查询，逐行处理，不在内存中保留整个结果集；游标需要在事务中读取
+        content.append("\n @Transactional(readOnly = true) public void streamAll(").append(entityClasses.getQueryClass().getName())
+                .append(" query, Consumer<").append(dtoName).append("> consumer) { ")
+                .append("try (Cursor<").append(dtoName).append("> cursor = ").append(daoFieldName).append(".streamAll(query)) { cursor.forEach(consumer); } ")
+                .append("catch (IOException e) { throw new UncheckedIOException(e); } }");
+
+        // 数据变更标识，控制器根据它生成ETag
+        if (hasChangeStamp()) {
+            content.append("\n @Transactional(readOnly = true) public String changeStamp() { return ").append(daoFieldName).append(".changeStamp(); }");
+        }
+
+        // 增量同步，since为空时从头开始；每次最多返回BATCH_SIZE条，调用方使用最后一条数据的变更时间及主键继续查询
+        if (null != getChangeTimeColumn()) {
+            content.append("\n @Transactional(readOnly = true) public List<").append(dtoName)
+                    .append("> changesSince(LocalDateTime since, Long cursorId, int limit) { return ").append(daoFieldName)
+                    .append(".changesSince(since, null == cursorId ? 0L : cursorId, Math.max(1, Math.min(limit, BATCH_SIZE))); }");
+        }
+
+        // 查询详情，包括列表查询中不返回的大字段；查询所有数据但不包括大字段时使用findAllWithoutLob
+        if (config.getWithLob()) {
+            content.append("\n @Transactional(readOnly = true) public Optional<").append(dtoName).append("> findDetail(Long id) { ")
+                    .append("return Optional.ofNullable(").append(daoFieldName).append(".findDetail(id)); }")
+                    .append("\n @Transactional(readOnly = true) public List<").append(dtoName).append("> findAllWithoutLob() { return ")
+                    .append(daoFieldName).append(".query(new ").append(entityClasses.getQueryClass().getName()).append("()); }");
+        }
+
+        // 关联查询，关联实体通过连接查询一次加载
+        if (config.getWithAssociation()) {
+            content.append("\n @Transactional(readOnly = true) public List<").append(dtoName).append("> findWithAssociations(")
+                    .append(entityClasses.getQueryClass().getName()).append(" query) { return ").append(daoFieldName).append(".findWithAssociations(query); }");
+        }
+
+        // 树形结构，递归查询按深度返回节点，父节点总在子节点之前，一次遍历即可组装
+        if (config.getWithTree()) {
+            content.append("\n/** 获取以rootId为根的子树，rootId为空时获取所有根节点(parentId为空或者0)及其子树 **/")
+                    .append(" @Transactional(readOnly = true) public List<TreeNode<").append(dtoName).append(">> findTree(Long rootId) { ")
+                    .append("List<").append(dtoName).append("> nodes = ").append(daoFieldName).append(".findSubtree(rootId); ")
+                    .append("Map<Long, TreeNode<").append(dtoName).append(">> nodeMap = new HashMap<>(nodes.size() * 2); ")
+                    .append("List<TreeNode<").append(dtoName).append(">> roots = new ArrayList<>(); ")
+                    .append("for (").append(dtoName).append(" dto : nodes) { TreeNode<").append(dtoName).append("> node = new TreeNode<>(dto); ")
+                    .append("nodeMap.put(dto.getId(), node); TreeNode<").append(dtoName)
+                    .append("> parent = null == dto.getParentId() ? null : nodeMap.get(dto.getParentId()); ")
+                    .append("if (null == parent) { roots.add(node); } else { parent.getChildren().add(node); } } return roots; }")
+                    .append("\n/** 获取所有祖先节点，从根节点开始，不包括节点本身 **/")
+                    .append(" @Transactional(readOnly = true) public List<").append(dtoName).append("> findAncestors(Long id) { return ")
+                    .append(daoFieldName).append(".findAncestors(id); }");
+        }
+
+        // 分组统计，按序号存储的枚举将序号转换为枚举名称；时间范围为空时默认统计最近30天或者最近12个月
+        List<Column> enumColumns = getEnumColumns(entityClasses.getEntityClass());
+        for (Column column : enumColumns) {
+            content.append("\n @Transactional(readOnly = true) public List<AggregateBucket> ").append(getCountMethod(column)).append("() { ");
+            if (column.typeHandler.endsWith("EnumOrdinalTypeHandler")) {
+                content.append("List<AggregateBucket> buckets = ").append(daoFieldName).append(".").append(getCountMethod(column)).append("(); ")
+                        .append("for (AggregateBucket bucket : buckets) { if (null != bucket.getKey()) { bucket.setKey(")
+                        .append(column.enumClass.getName()).append(".values()[Integer.parseInt(bucket.getKey())].name()); } } return buckets; }");
+            } else {
+                content.append("return ").append(daoFieldName).append(".").append(getCountMethod(column)).append("(); }");
             }
         }
+        if (config.getWithCreateTime()) {
+            content.append("\n @Transactional(readOnly = true) public List<AggregateBucket> countByDay(LocalDateTime from, LocalDateTime to) { ")
+                    .append("LocalDateTime end = null == to ? LocalDateTime.now() : to; return ").append(daoFieldName)
+                    .append(".countByDay(null == from ? end.toLocalDate().minusDays(29).atStartOfDay() : from, end); }")
+                    .append("\n @Transactional(readOnly = true) public List<AggregateBucket> countByMonth(LocalDateTime from, LocalDateTime to) { ")
+                    .append("LocalDateTime end = null == to ? LocalDateTime.now() : to; return ").append(daoFieldName)
+                    .append(".countByMonth(null == from ? end.toLocalDate().withDayOfMonth(1).minusMonths(11).atStartOfDay() : from, end); }");
+        }
+
+        // 全文检索，关键字为空时返回空结果，每页数据量不超过BATCH_SIZE
+        if (config.getWithSearch()) {
+            content.append("\n @Transactional(readOnly = true) public PageInfo<").append(dtoName).append("> search(String keyword, Integer page, Integer size) { ")
+                    .append("if (null == keyword || keyword.trim().isEmpty()) { return new PageInfo<>(Collections.emptyList()); } ")
+                    .append("PageHelper.startPage(null == page ? 1 : page, null == size ? 20 : Math.max(1, Math.min(size, BATCH_SIZE))); ")
+                    .append("return new PageInfo<>(").append(daoFieldName).append(".search(keyword.trim())); }");
+        }
 
+        // 乐观锁更新，不持有行锁；每次尝试都读取最新数据，因此不能放在同一个事务中
+        if (config.getWithVersion()) {
+            // 版本号为包装类型时可能为空，与更新语句一致按0处理
+            PsiField versionField = entityClasses.getEntityClass().findFieldByName("version", true);
+            String nextVersion = null != versionField && versionField.getType() instanceof PsiPrimitiveType
+                    ? "dto.getVersion() + 1" : "null == dto.getVersion() ? 1 : dto.getVersion() + 1";
+            content.append("\nprivate static final int MAX_RETRIES = 3;")
+                    .append("\n/** 读取最新数据并修改后按版本号条件更新，版本冲突时重新读取，超过重试次数时抛出异常 **/")
+                    .append("public ").append(dtoName).append(" updateWithRetry(Long id, UnaryOperator<").append(dtoName).append("> modifier) { ")
+                    .append("for (int i = 0; i < MAX_RETRIES; i++) { List<").append(dtoName).append("> current = ").append(daoFieldName)
+                    .append(".findByIds(Collections.singletonList(id)); if (current.isEmpty()) { throw new EmptyResultDataAccessException(1); } ")
+                    .append(dtoName).append(" dto = modifier.apply(current.get(0)); dto.setId(id); ")
+                    .append("if (1 == ").append(daoFieldName).append(".updateWithVersion(dto)) { dto.setVersion(").append(nextVersion).append("); ")
+                    .append(config.getWithCache() ? "evictCache(Collections.singletonList(id)); " : "")
+                    .append(getSnapshotRefreshStatement())
+                    .append("return dto; } } throw new OptimisticLockingFailureException(\"")
+                    .append(entityClasses.getEntityName()).append(" \" + id + \" was updated concurrently\"); }");
+        }
 
         content.append("}");
 
+        if (config.getWithCache()) {
+            createCacheConfig();
+        }
+
+        if (config.getRouting()) {
+            createRoutingConfig();
+        }
+
         ClassCreator.of(module).init(serviceName + (config.getWithInterface() ? "Impl" : ""), content.toString())
                 .importClass(entityClasses.getEntityClass())
                 .importClass("javax.annotation.Resource")
                 .importClass("org.springframework.stereotype.Service")
-                .importClassIf("Transactional", () -> config.getWithInterface())
-                .importClassIf("java.util.Optional", () -> config.getWithInterface())
-                .importClassIf("java.util.List", () -> config.getWithInterface())
-                .importClassIf("java.time.LocalDateTime", () -> config.getWithCreateTime())
-                .importClassIf("PageHelper", () -> config.getWithInterface())
+                .importClass("org.springframework.transaction.annotation.Transactional")
+                .importClassIf("java.util.Optional", () -> config.getWithInterface() || config.getWithLob() || config.getWithSnapshot())
+                .importClass("java.util.List")
+                .importClass("java.util.Collection")
+                .importClass("java.util.Map")
+                .importClass("java.util.HashMap")
+                .importClass("java.util.ArrayList")
+                .importClass("java.util.LinkedHashSet")
+                .importClassIf("java.util.Set", () -> !config.getWithSuper())
+                .importClassIf("java.util.HashSet", () -> !config.getWithSuper())
+                .importClassIf("java.util.Arrays", () -> !config.getWithSuper())
+                .importClass("org.apache.ibatis.session.SqlSessionFactory")
+                .importClass("org.apache.ibatis.session.SqlSession")
+                .importClass("org.apache.ibatis.session.ExecutorType")
+                .importClassIf("org.apache.ibatis.executor.BatchResult", () -> config.getWithVersion())
+                .importClassIf("javax.persistence.PersistenceContext", () -> (!config.getWithSuper() && !config.getWithIdentity()) || config.getWithIdGenerator())
+                .importClassIf("javax.persistence.EntityManager", () -> (!config.getWithSuper() && !config.getWithIdentity()) || config.getWithIdGenerator())
+                .importClassIf("org.hibernate.engine.spi.SharedSessionContractImplementor", () -> config.getWithIdGenerator())
+                .importClassIf("org.hibernate.id.IdentifierGenerator", () -> config.getWithIdGenerator())
+                .importClass("org.apache.ibatis.cursor.Cursor")
+                .importClass("java.util.function.Consumer")
+                .importClass("java.io.IOException")
+                .importClass("java.io.UncheckedIOException")
+                .importClassIf("java.util.Objects", () -> config.getWithCache())
+                .importClassIf("java.util.Collections", () -> config.getWithVersion() || config.getWithSearch()
+                        || (!config.getWithSuper() && config.getWithDeleted()))
+                .importClassIf("java.util.function.UnaryOperator", () -> config.getWithVersion())
+                .importClass("org.springframework.dao.EmptyResultDataAccessException")
+                .importClassIf("org.springframework.dao.OptimisticLockingFailureException", () -> config.getWithVersion())
+                .importClassIf("java.util.stream.Collectors", () -> config.getWithCache())
+                .importClassIf("org.springframework.cache.Cache", () -> config.getWithCache())
+                .importClassIf("org.springframework.cache.CacheManager", () -> config.getWithCache())
+                .importClassIf("org.springframework.cache.annotation.Cacheable", () -> config.getWithCache())
+                .importClassIf("org.springframework.cache.annotation.CacheEvict", () -> config.getWithCache())
+                .importClassIf("org.springframework.cache.annotation.CachePut", () -> config.getWithCache())
+                .importClassIf("org.springframework.cache.annotation.Caching", () -> config.getWithCache())
+                .importClassIf("java.time.LocalDateTime", () -> config.getWithCreateTime() || null != getChangeTimeColumn())
+                .importClassIf("PageHelper", () -> config.getWithInterface() || config.getWithSearch())
                 .importClassIf(config.getSuperService(), () -> config.getWithSuper())
                 .importClass("AbstractBaseEntityService")
-                .importClassIf("com.github.pagehelper.PageInfo", () -> config.getWithInterface())
+                .importClassIf("com.github.pagehelper.PageInfo", () -> config.getWithInterface() || config.getWithSearch())
                 .importClassIf(serviceName, () -> config.getExcelFunc())
                 .importClassIf("ExcelUtils", () -> config.getExcelFunc())
                 .importClassIf("Workbook", () -> config.getExcelFunc())
@@ -616,32 +1634,640 @@ public class GeneratorAction extends MyAnAction {
                     psiUtils.importClass(implClass, entityClasses.getServiceClass(),
                             entityClasses.getRepositoryClass(), entityClasses.getMapperClass(), entityClasses.getDtoClass(),
                             entityClasses.getQueryClass(),
-                            entityClasses.getDaoClass());
+                            entityClasses.getDaoClass(), entityClasses.getSnapshotClass(), entityClasses.getTreeNodeClass(),
+                            entityClasses.getAggregateBucketClass());
+                    enumColumns.stream().filter(column -> column.typeHandler.endsWith("EnumOrdinalTypeHandler"))
+                            .forEach(column -> psiUtils.importClass(implClass, column.enumClass));
+
+                    if (config.getMetrics()) {
+                        addMetricsAnnotations(entityClasses, implClass);
+                    }
+
+                    if (config.getPerfTest()) {
+                        createPerformanceTest(entityClasses);
+                    }
 
                     createController(entityClasses);
                 });
     }
 
     /**
-     * 创建控制器
+     * 服务中的写操作，失败时计数
+     */
+    private static final List<String> WRITE_OPERATIONS = Arrays.asList("save", "delete", "batchDelete", "patch", "batchUpsert",
+            "batchUpdate", "updateWithRetry", "upload");
+
+    /**
+     * 为服务中的公共方法增加监控注解，指标名称为"实体名.service"，通过operation标签区分方法；
+     * 所有方法记录耗时，写操作额外记录失败次数；默认不发布直方图，避免每个方法产生大量时间序列，
+     * 需要时通过management.metrics.distribution.percentiles-histogram.实体名.service=true开启
      *
-     * @param entityClasses 相关类
+     * @param entityClasses 实体相关类集合
+     * @param implClass     服务实现类
      */
-    private void createController(EntityClasses entityClasses) {
-        // 在Service同目录下获取controller或者web目录
-        PsiDirectory controllerDirectory = directoryMap.get("rest");
+    private void addMetricsAnnotations(EntityClasses entityClasses, PsiClass implClass) {
+        String metricName = MyStringUtils.firstLetterToLower(entityClasses.getEntityName()) + ".service";
+        for (PsiMethod method : implClass.getMethods()) {
+            if (!method.hasModifierProperty(PsiModifier.PUBLIC) || method.hasModifierProperty(PsiModifier.STATIC)) {
+                continue;
+            }
 
-        String prefix = config.getControllerPrefix();
+            String tags = "extraTags = {\"operation\", \"" + method.getName() + "\"}";
+            if (WRITE_OPERATIONS.contains(method.getName())) {
+                psiUtils.addAnnotationFromStrFirst(method, "@io.micrometer.core.annotation.Counted(value = \"" + metricName
+                        + ".failures\", recordFailuresOnly = true, " + tags + ")");
+            }
+            psiUtils.addAnnotationFromStrFirst(method, "@io.micrometer.core.annotation.Timed(value = \"" + metricName + "\", " + tags + ")");
+        }
 
-        // 判断是否要加API的注解
-        Optional<PsiClass> apiClass = psiUtils.findClass("io.swagger.annotations.Api");
-        boolean useAPI = apiClass.isPresent();
+        createMetricsConfig();
+    }
 
-        String suffix = "Controller";
+    /**
+     * 创建监控配置：使Timed、Counted注解生效的切面，以及按语句记录耗时、行数并输出慢SQL日志的MyBatis拦截器
+     */
+    private void createMetricsConfig() {
+        createConfigClass("MetricsConfig", "/** 监控配置，Timed、Counted注解需要spring-boot-starter-aop **/\n" +
+                        "@Configuration public class MetricsConfig {" +
+                        "@Bean @ConditionalOnMissingBean public TimedAspect timedAspect(MeterRegistry meterRegistry) { return new TimedAspect(meterRegistry); }" +
+                        "@Bean @ConditionalOnMissingBean public CountedAspect countedAspect(MeterRegistry meterRegistry) { return new CountedAspect(meterRegistry); }}",
+                "org.springframework.context.annotation.Configuration",
+                "org.springframework.context.annotation.Bean",
+                "org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean",
+                "io.micrometer.core.instrument.MeterRegistry",
+                "io.micrometer.core.aop.TimedAspect",
+                "io.micrometer.core.aop.CountedAspect");
+
+        createConfigClass("MybatisMetricsInterceptor", "/** MyBatis语句监控，按Dao.xml中的语句记录耗时及返回行数，超过阈值时输出慢SQL日志；" +
+                        "指标按语句缓存，默认不发布直方图，需要时通过management.metrics.distribution.percentiles-histogram.mybatis.statement=true开启 **/\n" +
+                        "@Intercepts({@Signature(type = Executor.class, method = \"update\", args = {MappedStatement.class, Object.class}), " +
+                        "@Signature(type = Executor.class, method = \"query\", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}), " +
+                        "@Signature(type = Executor.class, method = \"query\", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class}), " +
+                        "@Signature(type = Executor.class, method = \"queryCursor\", args = {MappedStatement.class, Object.class, RowBounds.class})})" +
+                        "@Component public class MybatisMetricsInterceptor implements Interceptor {" +
+                        "private static final Logger LOGGER = LoggerFactory.getLogger(MybatisMetricsInterceptor.class);" +
+                        "private final MeterRegistry meterRegistry;" +
+                        "private final long slowThreshold;" +
+                        "private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();" +
+                        "private final ConcurrentMap<String, DistributionSummary> rowSummaries = new ConcurrentHashMap<>();" +
+                        "public MybatisMetricsInterceptor(MeterRegistry meterRegistry, @Value(\"${mybatis.metrics.slow-threshold:" + config.getSlowSqlThreshold() + "}\") long slowThreshold) { " +
+                        "this.meterRegistry = meterRegistry; this.slowThreshold = slowThreshold; }" +
+                        "\n@Override public Object intercept(Invocation invocation) throws Throwable { " +
+                        "MappedStatement statement = (MappedStatement) invocation.getArgs()[0]; long start = System.nanoTime(); String outcome = \"success\"; " +
+                        "try { Object result = invocation.proceed(); recordRows(statement.getId(), result); return result; } " +
+                        "catch (Throwable e) { outcome = \"error\"; throw e; } " +
+                        "finally { long elapsed = System.nanoTime() - start; " +
+                        "timer(statement.getId(), outcome).record(elapsed, TimeUnit.NANOSECONDS); " +
+                        "long millis = TimeUnit.NANOSECONDS.toMillis(elapsed); " +
+                        "if (millis > slowThreshold) { LOGGER.warn(\"Slow SQL {} took {} ms\", statement.getId(), millis); } } }" +
+                        "\n/** 记录查询返回行数或者更新影响行数，批量执行器返回的不是实际行数，不记录 **/" +
+                        "private void recordRows(String statementId, Object result) { long rows; " +
+                        "if (result instanceof Collection) { rows = ((Collection<?>) result).size(); } " +
+                        "else if (result instanceof Integer && (Integer) result >= 0) { rows = (Integer) result; } else { return; } " +
+                        "rowSummaries.computeIfAbsent(statementId, id -> DistributionSummary.builder(\"mybatis.statement.rows\").tag(\"statement\", id)" +
+                        ".register(meterRegistry)).record(rows); }" +
+                        "\n/** 获取语句的耗时指标，每个语句及结果只注册一次 **/" +
+                        "private Timer timer(String statementId, String outcome) { return timers.computeIfAbsent(statementId + \":\" + outcome, " +
+                        "key -> Timer.builder(\"mybatis.statement\").tag(\"statement\", statementId).tag(\"outcome\", outcome).register(meterRegistry)); }" +
+                        "\n@Override public Object plugin(Object target) { return Plugin.wrap(target, this); }" +
+                        "\n@Override public void setProperties(Properties properties) { }}",
+                "org.apache.ibatis.plugin.Intercepts",
+                "org.apache.ibatis.plugin.Signature",
+                "org.apache.ibatis.plugin.Interceptor",
+                "org.apache.ibatis.plugin.Invocation",
+                "org.apache.ibatis.plugin.Plugin",
+                "org.apache.ibatis.executor.Executor",
+                "org.apache.ibatis.mapping.MappedStatement",
+                "org.apache.ibatis.mapping.BoundSql",
+                "org.apache.ibatis.cache.CacheKey",
+                "org.apache.ibatis.session.RowBounds",
+                "org.apache.ibatis.session.ResultHandler",
+                "org.springframework.stereotype.Component",
+                "org.springframework.beans.factory.annotation.Value",
+                "io.micrometer.core.instrument.MeterRegistry",
+                "io.micrometer.core.instrument.Timer",
+                "io.micrometer.core.instrument.DistributionSummary",
+                "org.slf4j.Logger",
+                "org.slf4j.LoggerFactory",
+                "java.util.Collection",
+                "java.util.Properties",
+                "java.util.concurrent.ConcurrentMap",
+                "java.util.concurrent.ConcurrentHashMap",
+                "java.util.concurrent.TimeUnit");
+    }
 
-        String entityName = entityClasses.getEntityName();
-        String controllerPath = Arrays.stream(StringUtils.splitByCharacterTypeCamelCase(entityName))
-                .reduce((s1, s2) -> s1.toLowerCase().concat("-").concat(s2.toLowerCase())).orElse("");
+    /**
+     * 获取缓存名称，按主键缓存的数据使用该名称，列表数据使用"名称:list"
+     */
+    private String getCacheName(EntityClasses entityClasses) {
+        return MyStringUtils.firstLetterToLower(entityClasses.getEntityName());
+    }
+
+    /**
+     * 获取服务方法上的缓存注解，未启用缓存时返回空字符串
+     * 按主键读取的结果缓存在实体缓存中，列表结果缓存在列表缓存中；写操作清除对应主键并清空列表缓存
+     *
+     * @param entityClasses 实体相关类集合
+     * @param operation     操作：findOne/findAll/save/saveAndPut/delete
+     * @return 缓存注解
+     */
+    private String getCacheAnnotation(EntityClasses entityClasses, String operation) {
+        if (!config.getWithCache()) {
+            return "";
+        }
+
+        String cacheName = getCacheName(entityClasses);
+        String evictList = "@CacheEvict(cacheNames = \"" + cacheName + ":list\", allEntries = true)";
+        switch (operation) {
+            case "findOne":
+                return "@Cacheable(cacheNames = \"" + cacheName + "\", key = \"#id\", unless = \"#result == null\")";
+            case "findAll":
+                return "@Cacheable(cacheNames = \"" + cacheName + ":list\", key = \"'all'\")";
+            case "save":
+                return "@Caching(evict = {@CacheEvict(cacheNames = \"" + cacheName + "\", key = \"#dto.id\", condition = \"null != #dto.id\"), "
+                        + evictList + "})";
+            case "saveAndPut":
+                return "@Caching(put = @CachePut(cacheNames = \"" + cacheName + "\", key = \"#result.id\"), evict = " + evictList + ")";
+            case "delete":
+                return "@Caching(evict = {@CacheEvict(cacheNames = \"" + cacheName + "\", key = \"#id\"), " + evictList + "})";
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * 获取写操作中刷新内存快照的语句，快照在事务提交后刷新；未启用快照时返回空字符串
+     */
+    private String getSnapshotRefreshStatement() {
+        return config.getWithSnapshot() ? "snapshot.refreshAfterCommit(); " : "";
+    }
+
+    /**
+     * 获取批量操作中清除缓存的语句，未启用缓存时返回空字符串
+     *
+     * @param entityClasses 实体相关类集合
+     * @param dtoList       DTO列表参数名，为空时表示参数为主键列表ids
+     * @return 清除缓存语句
+     */
+    private String getCacheEvictStatement(EntityClasses entityClasses, String dtoList) {
+        if (!config.getWithCache()) {
+            return "";
+        }
+
+        if (null == dtoList) {
+            return "evictCache(ids); ";
+        }
+
+        return "evictCache(" + dtoList + ".stream().map(" + entityClasses.getDtoClass().getName()
+                + "::getId).filter(Objects::nonNull).collect(Collectors.toList())); ";
+    }
+
+    /**
+     * 创建缓存配置，CacheManager由项目定义或者由Spring Boot自动配置(默认为本地内存缓存)，不在普通配置类中按条件定义，避免依赖配置类的加载顺序；
+     * 所有CacheManager都包装为事务感知代理，缓存操作在事务提交后执行，避免回滚或者并发读取时缓存旧数据
+     */
+    private void createCacheConfig() {
+        createConfigClass("CacheConfig", "/** 缓存配置，CacheManager使用项目中定义的或者自动配置的，并包装为事务感知的代理 **/\n" +
+                        "@Configuration @EnableCaching public class CacheConfig {" +
+                        "@Bean public static BeanPostProcessor transactionAwareCacheManagerPostProcessor() { return new BeanPostProcessor() { " +
+                        "@Override public Object postProcessAfterInitialization(Object bean, String beanName) { " +
+                        "return bean instanceof CacheManager && !(bean instanceof TransactionAwareCacheManagerProxy) " +
+                        "? new TransactionAwareCacheManagerProxy((CacheManager) bean) : bean; } }; }}",
+                "org.springframework.context.annotation.Configuration",
+                "org.springframework.context.annotation.Bean",
+                "org.springframework.cache.annotation.EnableCaching",
+                "org.springframework.cache.CacheManager",
+                "org.springframework.cache.transaction.TransactionAwareCacheManagerProxy",
+                "org.springframework.beans.factory.config.BeanPostProcessor");
+    }
+
+    /**
+     * 创建读写分离配置：按只读事务标识路由的数据源及主库、从库的连接池配置，并在测试目录下生成路由测试；
+     * 路由数据源通过LazyConnectionDataSourceProxy包装，事务开始后执行第一条语句时才获取连接，此时只读标识已经确定
+     */
+    private void createRoutingConfig() {
+        createConfigClass("RoutingDataSource", "/** 读写分离数据源，只读事务按轮询使用从库，其它情况使用主库 **/\n" +
+                        "public class RoutingDataSource extends AbstractRoutingDataSource {" +
+                        "private static final String PRIMARY = \"primary\";" +
+                        "private final List<String> replicaKeys = new ArrayList<>();" +
+                        "private final AtomicInteger counter = new AtomicInteger();" +
+                        "public RoutingDataSource(DataSource primary, List<? extends DataSource> replicas) { " +
+                        "Map<Object, Object> targetDataSources = new HashMap<>(replicas.size() * 2 + 2); targetDataSources.put(PRIMARY, primary); " +
+                        "for (int i = 0; i < replicas.size(); i++) { String key = \"replica-\" + i; targetDataSources.put(key, replicas.get(i)); replicaKeys.add(key); } " +
+                        "setTargetDataSources(targetDataSources); setDefaultTargetDataSource(primary); afterPropertiesSet(); }" +
+                        "\n@Override protected Object determineCurrentLookupKey() { " +
+                        "if (replicaKeys.isEmpty() || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) { return PRIMARY; } " +
+                        "return replicaKeys.get(Math.floorMod(counter.getAndIncrement(), replicaKeys.size())); }}",
+                "org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource",
+                "org.springframework.transaction.support.TransactionSynchronizationManager",
+                "javax.sql.DataSource",
+                "java.util.List",
+                "java.util.ArrayList",
+                "java.util.Map",
+                "java.util.HashMap",
+                "java.util.concurrent.atomic.AtomicInteger");
+
+        createConfigClass("DataSourceRoutingConfig", "/** 读写分离配置，配置了spring.datasource.primary.url时生效；" +
+                        "\n * 主库使用spring.datasource.primary.*，从库使用spring.datasource.replicas[n].*，连接池参数通过各自的hikari.*配置；" +
+                        "\n * 需要设置spring.jpa.open-in-view=false，否则同一请求中的多个事务会复用第一次获取的连接 **/\n" +
+                        "@Configuration @ConditionalOnProperty(prefix = \"spring.datasource.primary\", name = \"url\")" +
+                        "public class DataSourceRoutingConfig implements DisposableBean {" +
+                        "private final List<HikariDataSource> dataSources = new ArrayList<>();" +
+                        "\n@Bean @Primary public DataSource dataSource(Environment environment) { Binder binder = Binder.get(environment); " +
+                        "HikariDataSource primary = createDataSource(binder, \"spring.datasource.primary\"); List<HikariDataSource> replicas = new ArrayList<>(); " +
+                        "for (int i = 0; binder.bind(\"spring.datasource.replicas[\" + i + \"].url\", String.class).isBound(); i++) { " +
+                        "replicas.add(createDataSource(binder, \"spring.datasource.replicas[\" + i + \"]\")); } " +
+                        "return new LazyConnectionDataSourceProxy(new RoutingDataSource(primary, replicas)); }" +
+                        "\nprivate HikariDataSource createDataSource(Binder binder, String prefix) { " +
+                        "DataSourceProperties properties = binder.bind(prefix, DataSourceProperties.class).get(); " +
+                        "HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build(); " +
+                        "binder.bind(prefix + \".hikari\", Bindable.ofInstance(dataSource)); dataSources.add(dataSource); return dataSource; }" +
+                        "\n@Override public void destroy() { dataSources.forEach(HikariDataSource::close); }}",
+                "org.springframework.context.annotation.Configuration",
+                "org.springframework.context.annotation.Bean",
+                "org.springframework.context.annotation.Primary",
+                "org.springframework.boot.autoconfigure.condition.ConditionalOnProperty",
+                "org.springframework.boot.autoconfigure.jdbc.DataSourceProperties",
+                "org.springframework.boot.context.properties.bind.Binder",
+                "org.springframework.boot.context.properties.bind.Bindable",
+                "org.springframework.beans.factory.DisposableBean",
+                "org.springframework.core.env.Environment",
+                "org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy",
+                "com.zaxxer.hikari.HikariDataSource",
+                "javax.sql.DataSource",
+                "java.util.List",
+                "java.util.ArrayList");
+
+        // 测试与RoutingDataSource在同一个包中
+        psiUtils.getTestDirectory(psiUtils.getOrCreateSubDirectory(workDir, "config")).ifPresent(testDirectory -> ClassCreator.of(module).init("DataSourceRoutingTest",
+                "/** 读写分离测试，使用两个内嵌H2数据库分别作为主库与从库，每个库中记录自己的名称 **/\n" +
+                        "public class DataSourceRoutingTest {" +
+                        "private EmbeddedDatabase primary; private EmbeddedDatabase replica;" +
+                        "private JdbcTemplate jdbcTemplate; private TransactionTemplate transactionTemplate;" +
+                        "\n@BeforeEach public void setUp() { primary = createDatabase(\"primary\"); replica = createDatabase(\"replica\"); " +
+                        "DataSource dataSource = new LazyConnectionDataSourceProxy(new RoutingDataSource(primary, Collections.singletonList(replica))); " +
+                        "jdbcTemplate = new JdbcTemplate(dataSource); transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource)); }" +
+                        "\n@AfterEach public void tearDown() { primary.shutdown(); replica.shutdown(); }" +
+                        "\nprivate EmbeddedDatabase createDatabase(String name) { " +
+                        "EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).setName(name).build(); " +
+                        "JdbcTemplate template = new JdbcTemplate(database); template.execute(\"create table routing_check (name varchar(32))\"); " +
+                        "template.update(\"insert into routing_check (name) values (?)\", name); return database; }" +
+                        "\nprivate String currentDatabase() { return jdbcTemplate.queryForObject(\"select name from routing_check\", String.class); }" +
+                        "\n@Test public void readOnlyTransactionUsesReplica() { transactionTemplate.setReadOnly(true); " +
+                        "Assertions.assertEquals(\"replica\", transactionTemplate.execute(status -> currentDatabase())); }" +
+                        "\n@Test public void writeTransactionUsesPrimary() { Assertions.assertEquals(\"primary\", transactionTemplate.execute(status -> currentDatabase())); }" +
+                        "\n@Test public void noTransactionUsesPrimary() { Assertions.assertEquals(\"primary\", currentDatabase()); }}")
+                .importClass("org.junit.jupiter.api.Test")
+                .importClass("org.junit.jupiter.api.BeforeEach")
+                .importClass("org.junit.jupiter.api.AfterEach")
+                .importClass("org.junit.jupiter.api.Assertions")
+                .importClass("org.springframework.jdbc.core.JdbcTemplate")
+                .importClass("org.springframework.jdbc.datasource.DataSourceTransactionManager")
+                .importClass("org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy")
+                .importClass("org.springframework.jdbc.datasource.embedded.EmbeddedDatabase")
+                .importClass("org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder")
+                .importClass("org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType")
+                .importClass("org.springframework.transaction.support.TransactionTemplate")
+                .importClass("javax.sql.DataSource")
+                .importClass("java.util.Collections")
+                .addTo(testDirectory));
+    }
+
+    /**
+     * 在config目录下创建配置类，已存在时不重复创建
+     *
+     * @param name          类名
+     * @param content       类内容
+     * @param importClasses 需要导入的类
+     */
+    private void createConfigClass(String name, String content, String... importClasses) {
+        ClassCreator creator = ClassCreator.of(module).init(name, content);
+        for (String importClass : importClasses) {
+            creator.importClass(importClass);
+        }
+
+        creator.addTo(psiUtils.getOrCreateSubDirectory(workDir, "config"));
+    }
+
+    /**
+     * 在测试目录下创建性能测试：测试数据构造类、基于内嵌H2的集成测试及JMH基准测试，不依赖外部数据库；
+     * 集成测试按数据量测量批量保存、深分页、按属性查询及Excel上传下载的整体耗时，基准测试测量单批操作的吞吐量
+     *
+     * @param entityClasses 实体相关类集合
+     */
+    private void createPerformanceTest(EntityClasses entityClasses) {
+        Optional<PsiDirectory> testDirectoryOptional = psiUtils.getTestDirectory(directoryMap.get("service"));
+        if (!testDirectoryOptional.isPresent()) {
+            return;
+        }
+
+        PsiDirectory testDirectory = testDirectoryOptional.get();
+        String entityName = entityClasses.getEntityName();
+        String dtoName = entityClasses.getDtoClass().getName();
+        String queryName = entityClasses.getQueryClass().getName();
+        String serviceName = entityClasses.getServiceTypeName();
+        String serviceFieldName = StringUtils.uncapitalize(serviceName);
+        String daoName = entityClasses.getDaoClass().getName();
+        String daoFieldName = StringUtils.uncapitalize(daoName);
+        String dataName = entityName + "TestData";
+        String databaseName = MyStringUtils.firstLetterToLower(entityName) + "_perf";
+
+        // 测试数据按属性类型填充，主键、版本号及关联对象由数据库生成或者不填充
+        StringBuilder setters = new StringBuilder();
+        List<String> dataImports = new ArrayList<>();
+        for (Column column : getColumns(entityClasses.getEntityClass())) {
+            if ("id".equals(column.property) || column.association || isVersion(column)) {
+                continue;
+            }
+
+            getTestValue(column.field.getType(), dataImports).ifPresent(value -> setters.append("dto.set")
+                    .append(StringUtils.capitalize(column.field.getName())).append("(").append(value).append("); "));
+        }
+
+        ClassCreator dataCreator = ClassCreator.of(module).init(dataName, comment.getContent("性能测试数据") +
+                "\npublic final class " + dataName + " {" +
+                "private " + dataName + "() { }" +
+                "\n/** 构造第i条测试数据，字符串属性使用序号的36进制表示，保证唯一且长度较短 **/" +
+                "public static " + dtoName + " newDto(int i) { " + dtoName + " dto = new " + dtoName + "(); " + setters + "return dto; }" +
+                "\n/** 构造从from开始的count条测试数据 **/" +
+                "public static List<" + dtoName + "> newDtos(int from, int count) { List<" + dtoName + "> dtos = new ArrayList<>(count); " +
+                "for (int i = from; i < from + count; i++) { dtos.add(newDto(i)); } return dtos; }}")
+                .importClass("java.util.List")
+                .importClass("java.util.ArrayList");
+        dataImports.forEach(dataCreator::importClass);
+        dataCreator.addTo(testDirectory)
+                .and(dataClass -> psiUtils.importClass(dataClass, entityClasses.getDtoClass()));
+
+        // 集成测试，按顺序执行，后面的查询使用前面写入的数据
+        StringBuilder content = new StringBuilder(comment.getContent("性能测试"))
+                .append("\n@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {")
+                .append(getH2Properties(databaseName, "")).append("})")
+                .append("\n@TestMethodOrder(MethodOrderer.OrderAnnotation.class) public class ").append(entityName).append("PerformanceTest {")
+                .append("private static final Logger LOGGER = LoggerFactory.getLogger(").append(entityName).append("PerformanceTest.class);")
+                .append("\nprivate static final int BATCH_SIZE = ").append(config.getBatchSize()).append(";")
+                .append("\nprivate static final int PAGE_SIZE = 20;")
+                .append("\n/** 每个用例写入的数据量，可以通过-Dperf.rows指定 **/ @Value(\"${perf.rows:").append(config.getPerfRows()).append("}\") private int rows;")
+                .append("\n@Resource private ").append(serviceName).append(" ").append(serviceFieldName).append(";")
+                .append("\n@Resource private ").append(daoName).append(" ").append(daoFieldName).append(";");
+        if (config.getWithSuper()) {
+            content.append("\n@Test @Order(1) public void batchUpsert() { List<").append(dtoName).append("> dtos = ").append(dataName)
+                    .append(".newDtos(0, rows); long start = System.nanoTime(); ").append(serviceFieldName).append(".batchUpsert(dtos); ")
+                    .append("report(\"batchUpsert\", rows, start); }");
+        } else {
+            content.append("\n@Test @Order(1) public void save() { List<").append(dtoName).append("> dtos = ").append(dataName)
+                    .append(".newDtos(0, rows); long start = System.nanoTime(); ").append(serviceFieldName).append(".save(dtos); ")
+                    .append("report(\"save(List)\", rows, start); }");
+        }
+        content.append("\n@Test @Order(2) public void batchAdd() { List<").append(dtoName).append("> dtos = ").append(dataName)
+                .append(".newDtos(rows, rows); long start = System.nanoTime(); ")
+                .append(config.getWithIdGenerator() ? serviceFieldName + ".assignIds(dtos); " : "")
+                .append("for (int i = 0; i < dtos.size(); i += BATCH_SIZE) { ").append(daoFieldName)
+                .append(".batchAdd(dtos.subList(i, Math.min(i + BATCH_SIZE, dtos.size()))); } report(\"batchAdd\", rows, start); }");
+        if (!config.getWithSuper()) {
+            content.append("\n/** 第一页与最后一页对比，最后一页需要数据库跳过前面所有数据 **/")
+                    .append("@Test @Order(3) public void pageQuery() { ").append(queryName).append(" query = new ").append(queryName)
+                    .append("(); query.setSize(PAGE_SIZE); query.setPage(1); long start = System.nanoTime(); PageInfo<").append(dtoName)
+                    .append("> first = ").append(serviceFieldName).append(".pageQuery(query); report(\"pageQuery(first page)\", first.getList().size(), start); ")
+                    .append("query.setPage(first.getPages()); start = System.nanoTime(); PageInfo<").append(dtoName).append("> last = ")
+                    .append(serviceFieldName).append(".pageQuery(query); report(\"pageQuery(page \" + first.getPages() + \")\", last.getList().size(), start); ")
+                    .append("Assertions.assertFalse(last.getList().isEmpty()); }")
+                    .append("\n/** 只返回主键，对比全部属性的查询 **/")
+                    .append("@Test @Order(4) public void query() { ").append(queryName).append(" query = new ").append(queryName)
+                    .append("(); long start = System.nanoTime(); List<").append(dtoName).append("> all = ").append(serviceFieldName)
+                    .append(".query(query); report(\"query(all fields)\", all.size(), start); ")
+                    .append("query.setFields(Collections.singletonList(\"id\")); start = System.nanoTime(); List<").append(dtoName).append("> ids = ")
+                    .append(serviceFieldName).append(".query(query); report(\"query(id)\", ids.size(), start); ")
+                    .append("start = System.nanoTime(); ").append(serviceFieldName).append(".findByIds(ids.stream().map(").append(dtoName)
+                    .append("::getId).collect(Collectors.toList())); report(\"findByIds\", ids.size(), start); }");
+            if (config.getExcelFunc()) {
+                content.append("\n/** 下载全部数据后重新上传 **/")
+                        .append("@Test @Order(5) public void excel() throws IOException { long start = System.nanoTime(); Workbook workbook = ")
+                        .append(serviceFieldName).append(".download(new ").append(queryName).append("()); ByteArrayOutputStream out = new ByteArrayOutputStream(); ")
+                        .append("workbook.write(out); int count = workbook.getSheetAt(0).getLastRowNum(); report(\"download\", count, start); ")
+                        .append("start = System.nanoTime(); ").append(serviceFieldName)
+                        .append(".upload(new MockMultipartFile(\"file\", \"data.xlsx\", null, out.toByteArray())); report(\"upload\", count, start); }");
+            }
+        }
+        content.append("\nprivate void report(String operation, int count, long start) { ")
+                .append("long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)); ")
+                .append("LOGGER.info(\"{}: {} rows in {} ms, {} rows/s\", operation, count, millis, count * 1000L / millis); }}");
+
+        ClassCreator.of(module).init(entityName + "PerformanceTest", content.toString())
+                .importClass("org.springframework.boot.test.context.SpringBootTest")
+                .importClass("org.springframework.beans.factory.annotation.Value")
+                .importClass("org.junit.jupiter.api.Test")
+                .importClass("org.junit.jupiter.api.Order")
+                .importClass("org.junit.jupiter.api.MethodOrderer")
+                .importClass("org.junit.jupiter.api.TestMethodOrder")
+                .importClassIf("org.junit.jupiter.api.Assertions", () -> !config.getWithSuper())
+                .importClassIf("org.springframework.mock.web.MockMultipartFile", () -> !config.getWithSuper() && config.getExcelFunc())
+                .importClassIf("Workbook", () -> !config.getWithSuper() && config.getExcelFunc())
+                .importClassIf("java.io.ByteArrayOutputStream", () -> !config.getWithSuper() && config.getExcelFunc())
+                .importClassIf("java.io.IOException", () -> !config.getWithSuper() && config.getExcelFunc())
+                .importClassIf("com.github.pagehelper.PageInfo", () -> !config.getWithSuper())
+                .importClassIf("java.util.Collections", () -> !config.getWithSuper())
+                .importClassIf("java.util.stream.Collectors", () -> !config.getWithSuper())
+                .importClass("javax.annotation.Resource")
+                .importClass("java.util.List")
+                .importClass("java.util.concurrent.TimeUnit")
+                .importClass("org.slf4j.Logger")
+                .importClass("org.slf4j.LoggerFactory")
+                .addTo(testDirectory)
+                .and(testClass -> psiUtils.importClass(testClass, entityClasses.getDtoClass(), entityClasses.getQueryClass(),
+                        entityClasses.getServiceClass(), entityClasses.getServiceImplClass(), entityClasses.getDaoClass()));
+
+        // JMH基准测试需要从启动类创建Spring上下文，找不到启动类时不生成
+        psiUtils.findAnnotatedClass("org.springframework.boot.autoconfigure.SpringBootApplication")
+                .ifPresent(applicationClass -> createBenchmark(entityClasses, testDirectory, applicationClass, databaseName));
+    }
+
+    /**
+     * 创建JMH基准测试，每次调用写入或者查询一批数据；需要jmh-core及jmh-generator-annprocess测试依赖
+     *
+     * @param entityClasses    实体相关类集合
+     * @param testDirectory    测试目录
+     * @param applicationClass Spring Boot启动类
+     * @param databaseName     内嵌数据库名称
+     */
+    private void createBenchmark(EntityClasses entityClasses, PsiDirectory testDirectory, PsiClass applicationClass, String databaseName) {
+        String entityName = entityClasses.getEntityName();
+        String benchmarkName = entityName + "Benchmark";
+        String dtoName = entityClasses.getDtoClass().getName();
+        String queryName = entityClasses.getQueryClass().getName();
+        String serviceName = entityClasses.getServiceTypeName();
+        String serviceFieldName = StringUtils.uncapitalize(serviceName);
+        String daoName = entityClasses.getDaoClass().getName();
+        String daoFieldName = StringUtils.uncapitalize(daoName);
+        String dataName = entityName + "TestData";
+
+        StringBuilder content = new StringBuilder(comment.getContent("基准测试"))
+                .append("\n@State(Scope.Benchmark) @BenchmarkMode(Mode.Throughput) @OutputTimeUnit(TimeUnit.SECONDS)")
+                .append("\n@Warmup(iterations = 3, time = 5) @Measurement(iterations = 5, time = 5) @Fork(1)")
+                .append("\npublic class ").append(benchmarkName).append(" {")
+                .append("\n/** 每次调用处理的数据量 **/ @Param({\"100\", \"").append(config.getBatchSize()).append("\"}) public int batchSize;")
+                .append("\nprivate ConfigurableApplicationContext context;")
+                .append("\nprivate ").append(serviceName).append(" ").append(serviceFieldName).append(";")
+                .append("\nprivate ").append(daoName).append(" ").append(daoFieldName).append(";")
+                .append("\n/** 预置数据量，可以通过-Dperf.rows指定 **/ private int rows;")
+                .append("\nprivate int sequence;")
+                .append("\n@Setup(Level.Trial) public void setUp() { context = new SpringApplicationBuilder(")
+                .append(applicationClass.getName()).append(".class).web(WebApplicationType.NONE).run(")
+                .append(getH2Properties(databaseName, "--")).append("); ")
+                .append(serviceFieldName).append(" = context.getBean(").append(serviceName).append(".class); ")
+                .append(daoFieldName).append(" = context.getBean(").append(daoName).append(".class); ")
+                .append("rows = Integer.getInteger(\"perf.rows\", ").append(config.getPerfRows()).append("); sequence = rows; ")
+                .append("List<").append(dtoName).append("> dtos = ").append(dataName).append(".newDtos(0, rows); ")
+                .append(config.getWithIdGenerator() ? serviceFieldName + ".assignIds(dtos); " : "")
+                .append("for (int i = 0; i < dtos.size(); i += ").append(config.getBatchSize()).append(") { ").append(daoFieldName)
+                .append(".batchAdd(dtos.subList(i, Math.min(i + ").append(config.getBatchSize()).append(", dtos.size()))); } }")
+                .append("\n@TearDown(Level.Trial) public void tearDown() { context.close(); }")
+                .append("\nprivate List<").append(dtoName).append("> nextBatch() { List<").append(dtoName).append("> dtos = ")
+                .append(dataName).append(".newDtos(sequence, batchSize); sequence += batchSize; return dtos; }")
+                .append("\n@Benchmark public void batchAdd() { List<").append(dtoName).append("> dtos = nextBatch(); ")
+                .append(config.getWithIdGenerator() ? serviceFieldName + ".assignIds(dtos); " : "")
+                .append(daoFieldName).append(".batchAdd(dtos); }")
+                .append("\n@Benchmark public void batchUpsert() { ").append(serviceFieldName).append(".batchUpsert(nextBatch()); }");
+        if (!config.getWithSuper()) {
+            content.append("\n@Benchmark public void save() { ").append(serviceFieldName).append(".save(nextBatch()); }")
+                    .append("\n/** 按预置数据量计算的最后一页 **/")
+                    .append("@Benchmark public Object pageQueryDeep() { ").append(queryName).append(" query = new ").append(queryName)
+                    .append("(); query.setSize(batchSize); query.setPage(Math.max(1, rows / batchSize)); return ")
+                    .append(serviceFieldName).append(".pageQuery(query); }")
+                    .append("\n@Benchmark public Object queryIds() { ").append(queryName).append(" query = new ").append(queryName)
+                    .append("(); query.setFields(Collections.singletonList(\"id\")); return ").append(serviceFieldName).append(".query(query); }");
+        }
+        content.append("\npublic static void main(String[] args) throws RunnerException { ")
+                .append("new Runner(new OptionsBuilder().include(").append(benchmarkName).append(".class.getSimpleName()).build()).run(); }}");
+
+        ClassCreator.of(module).init(benchmarkName, content.toString())
+                .importClass("org.openjdk.jmh.annotations.Benchmark")
+                .importClass("org.openjdk.jmh.annotations.BenchmarkMode")
+                .importClass("org.openjdk.jmh.annotations.Fork")
+                .importClass("org.openjdk.jmh.annotations.Level")
+                .importClass("org.openjdk.jmh.annotations.Measurement")
+                .importClass("org.openjdk.jmh.annotations.Mode")
+                .importClass("org.openjdk.jmh.annotations.OutputTimeUnit")
+                .importClass("org.openjdk.jmh.annotations.Param")
+                .importClass("org.openjdk.jmh.annotations.Scope")
+                .importClass("org.openjdk.jmh.annotations.Setup")
+                .importClass("org.openjdk.jmh.annotations.State")
+                .importClass("org.openjdk.jmh.annotations.TearDown")
+                .importClass("org.openjdk.jmh.annotations.Warmup")
+                .importClass("org.openjdk.jmh.runner.Runner")
+                .importClass("org.openjdk.jmh.runner.RunnerException")
+                .importClass("org.openjdk.jmh.runner.options.OptionsBuilder")
+                .importClass("org.springframework.boot.WebApplicationType")
+                .importClass("org.springframework.boot.builder.SpringApplicationBuilder")
+                .importClass("org.springframework.context.ConfigurableApplicationContext")
+                .importClassIf("java.util.Collections", () -> !config.getWithSuper())
+                .importClass("java.util.List")
+                .importClass("java.util.concurrent.TimeUnit")
+                .importClass(applicationClass)
+                .addTo(testDirectory)
+                .and(benchmarkClass -> psiUtils.importClass(benchmarkClass, entityClasses.getDtoClass(), entityClasses.getQueryClass(),
+                        entityClasses.getServiceClass(), entityClasses.getServiceImplClass(), entityClasses.getDaoClass()));
+    }
+
+    /**
+     * 获取内嵌H2数据库的配置，按dao.dialect使用对应的兼容模式，表结构由JPA根据实体创建
+     *
+     * @param databaseName 数据库名称
+     * @param prefix       配置项前缀，作为命令行参数时为"--"
+     * @return 逗号分隔的配置字符串
+     */
+    private String getH2Properties(String databaseName, String prefix) {
+        String mode;
+        switch (config.getDialect()) {
+            case "postgresql":
+                mode = ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH";
+                break;
+            case "h2":
+                mode = "";
+                break;
+            default:
+                mode = ";MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+        }
+
+        return Stream.of("spring.datasource.url=jdbc:h2:mem:" + databaseName + mode + ";DB_CLOSE_DELAY=-1",
+                "spring.datasource.driver-class-name=org.h2.Driver",
+                "spring.datasource.username=sa",
+                "spring.datasource.password=",
+                "spring.jpa.hibernate.ddl-auto=create-drop",
+                "spring.jpa.properties.hibernate.jdbc.batch_size=" + config.getBatchSize(),
+                "spring.jpa.properties.hibernate.order_inserts=true")
+                .map(property -> "\"" + prefix + property + "\"")
+                .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * 获取测试数据中属性的取值表达式，i为数据序号；不支持的类型返回空，不填充
+     *
+     * @param type    属性类型
+     * @param imports 需要导入的类
+     * @return 取值表达式
+     */
+    private Optional<String> getTestValue(PsiType type, List<String> imports) {
+        switch (type.getCanonicalText()) {
+            case "java.lang.String":
+                return Optional.of("Integer.toString(i, 36)");
+            case "int":
+            case "java.lang.Integer":
+                return Optional.of("i");
+            case "long":
+            case "java.lang.Long":
+                return Optional.of("(long) i");
+            case "short":
+            case "java.lang.Short":
+                return Optional.of("(short) i");
+            case "double":
+            case "java.lang.Double":
+                return Optional.of("(double) i");
+            case "float":
+            case "java.lang.Float":
+                return Optional.of("(float) i");
+            case "boolean":
+            case "java.lang.Boolean":
+                return Optional.of("false");
+            case "java.math.BigDecimal":
+                imports.add("java.math.BigDecimal");
+                return Optional.of("BigDecimal.valueOf(i)");
+            case "java.time.LocalDateTime":
+                imports.add("java.time.LocalDateTime");
+                return Optional.of("LocalDateTime.now()");
+            case "java.time.LocalDate":
+                imports.add("java.time.LocalDate");
+                return Optional.of("LocalDate.now()");
+            case "java.util.Date":
+                imports.add("java.util.Date");
+                return Optional.of("new Date()");
+            default:
+                return psiUtils.findClass(type.getCanonicalText()).filter(PsiClass::isEnum).map(enumClass -> {
+                    imports.add(type.getCanonicalText());
+                    return enumClass.getName() + ".values()[i % " + enumClass.getName() + ".values().length]";
+                });
+        }
+    }
+
+    /**
+     * 创建控制器
+     *
+     * @param entityClasses 相关类
+     */
+    private void createController(EntityClasses entityClasses) {
+        // 在Service同目录下获取controller或者web目录
+        PsiDirectory controllerDirectory = directoryMap.get("rest");
+
+        String prefix = config.getControllerPrefix();
+
+        // 判断是否要加API的注解
+        Optional<PsiClass> apiClass = psiUtils.findClass("io.swagger.annotations.Api");
+        boolean useAPI = apiClass.isPresent();
+
+        String suffix = "Controller";
+
+        String entityName = entityClasses.getEntityName();
+        String controllerPath = Arrays.stream(StringUtils.splitByCharacterTypeCamelCase(entityName))
+                .reduce((s1, s2) -> s1.toLowerCase().concat("-").concat(s2.toLowerCase())).orElse("");
         controllerPath = controllerPath.substring(0, 1).toLowerCase() + controllerPath.substring(1);
 
         entityClasses.controllerPath = prefix + "/" +controllerPath;
@@ -672,38 +2298,147 @@ public class GeneratorAction extends MyAnAction {
                     .append(",").append(entityClasses.getQueryClass().getName())
                     .append(",").append(entityClasses.getServiceImplClass().getName())
                     .append("> {");
+        } else {
+            content.append(" {");
+        }
+
+        String entityFieldName = MyStringUtils.firstLetterToLower(entityName);
+        String entityServiceName = entityFieldName + "Service";
+        content.append("@Resource private ")
+                .append(entityClasses.getServiceTypeName())
+                .append(" ")
+                .append(entityServiceName)
+                .append("; ");
+
+        String dtoName = entityClasses.getDtoClass().getName();
+        String queryName = entityClasses.getQueryClass().getName();
+        if (config.getControllerMode().equals("async")) {
+            content.append("@Resource(name = \"controllerExecutor\") private Executor controllerExecutor;");
         }
 
         if (!config.getWithSuper()) {
-            String entityFieldName = MyStringUtils.firstLetterToLower(entityName);
-            String entityServiceName = entityFieldName + "Service";
-
-            content.append("@Resource private ")
-                    .append(entityClasses.getServiceClass().getName())
-                    .append(" ")
-                    .append(entityFieldName)
-                    .append("Service; ")
-                    .append("@ApiOperation(\"保存\") @PostMapping(\"/save\")")
-                    .append("public void save(@RequestBody  ").append(entityClasses.getDtoClass().getName()).append(" ").append(entityFieldName).append(") { ")
-                    .append(entityServiceName).append(".save(").append(entityFieldName).append("); }")
-                    .append("@ApiOperation(\"根据主键删除\")  @DeleteMapping(\"/delete/{id}\") public void delete(@PathVariable(\"id\") Long id) {").append(
-                    entityServiceName).append(".delete(id);}")
-                    .append("@ApiOperation(\"查找所有数据\") @GetMapping(\"/list\") public List<").append(entityClasses.getDtoClass().getName()).append(
-                    "> list() { return ").append(entityServiceName).append(".findAll(); }")
-                    .append("@ApiOperation(\"分页查询\") @PostMapping(\"/page-query\") public PageInfo<").append(entityClasses.getDtoClass().getName()).append(
-                    "> pageQuery(@RequestBody ")
-                    .append(entityClasses.getQueryClass().getName()).append(" query) { return ").append(entityFieldName).append(
-                    "Service.pageQuery(query);}");
+            content.append(getEndpoint("@ApiOperation(\"保存\") @PostMapping(\"/save\")", "void",
+                    "save(@RequestBody " + dtoName + " " + entityFieldName + ")", entityServiceName + ".save(" + entityFieldName + ");"))
+                    .append(getEndpoint("@ApiOperation(\"根据主键删除\") @DeleteMapping(\"/delete/{id}\")", "void",
+                            "delete(@PathVariable(\"id\") Long id)", entityServiceName + ".delete(id);"));
+
+            if (hasChangeStamp()) {
+                // 根据数据变更标识生成ETag，与请求中的If-None-Match一致时不执行查询：GET请求返回304，其它请求按条件请求规范返回412
+                String notModified = "if (null != ifNoneMatch && ifNoneMatch.contains(eTag)) { return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build(); } ";
+                String preconditionFailed = "if (null != ifNoneMatch && ifNoneMatch.contains(eTag)) { return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).eTag(eTag).build(); } ";
+                content.append(getEndpoint("@ApiOperation(\"查找所有数据\") @GetMapping(\"/list\")", "ResponseEntity<List<" + dtoName + ">>",
+                        "list(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch)",
+                        "String eTag = \"\\\"\" + " + entityServiceName + ".changeStamp() + \"\\\"\"; " + notModified
+                                + "return ResponseEntity.ok().eTag(eTag).body(" + entityServiceName + ".findAll());"))
+                        .append(getEndpoint("@ApiOperation(\"分页查询\") @PostMapping(\"/page-query\")", "ResponseEntity<MappingJacksonValue>",
+                                "pageQuery(@RequestBody " + queryName + " query, @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch)",
+                                "String eTag = \"\\\"\" + " + entityServiceName + ".changeStamp() + \"-\" + Integer.toHexString(objectMapper.valueToTree(query).hashCode()) + \"\\\"\"; "
+                                        + preconditionFailed + "return ResponseEntity.ok().eTag(eTag).body(project(" + entityServiceName + ".pageQuery(query), query));"));
+            } else {
+                content.append(getEndpoint("@ApiOperation(\"查找所有数据\") @GetMapping(\"/list\")", "List<" + dtoName + ">",
+                        "list()", "return " + entityServiceName + ".findAll();"))
+                        .append(getEndpoint("@ApiOperation(\"分页查询\") @PostMapping(\"/page-query\")", "MappingJacksonValue",
+                                "pageQuery(@RequestBody " + queryName + " query)", "return project(" + entityServiceName + ".pageQuery(query), query);"));
+            }
+
+            // 按查询指定的fields只输出主键及指定的属性，只对本次响应生效，不影响其它接口的输出
+            content.append("\nprivate MappingJacksonValue project(Object body, ").append(queryName).append(" query) { ")
+                    .append("MappingJacksonValue value = new MappingJacksonValue(body); ")
+                    .append("if (null != query.getFields() && !query.getFields().isEmpty()) { ")
+                    .append("Set<String> fields = new HashSet<>(query.getFields()); fields.add(\"id\"); ")
+                    .append("value.setFilters(new SimpleFilterProvider().setFailOnUnknownId(false).addFilter(\"").append(dtoName)
+                    .append("\", SimpleBeanPropertyFilter.filterOutAllExcept(fields))); } return value; }");
 
             if (config.getExcelFunc()) {
-                content.append("@ApiOperation(\"模板下载\") @GetMapping(\"/template-download\") public void " +
-                        "downloadTemplate(HttpServletResponse response) {ExcelUtils.writeExcelToResponse(").append(entityServiceName).append(".downloadTemplate(), response, \"template.xlsx\"); }")
-                        .append("@ApiOperation(\"数据上传\") @PostMapping(\"/upload\") public void upload(@RequestParam(\"file\")MultipartFile file) {").append(entityServiceName).append(".upload(file);}")
-                        .append("@ApiOperation(\"数据下载\") @PostMapping(\"/download\") public void download(@RequestBody ")
-                        .append(entityClasses.getQueryClass().getName()).append(" query, HttpServletResponse response) { ExcelUtils.writeExcelToResponse(").append(entityServiceName).append(".download(query), response, \"data.xlsx\"); }");
+                content.append(getEndpoint("@ApiOperation(\"模板下载\") @GetMapping(\"/template-download\")", "void",
+                        "downloadTemplate(HttpServletResponse response)",
+                        "ExcelUtils.writeExcelToResponse(" + entityServiceName + ".downloadTemplate(), response, \"template.xlsx\");"))
+                        .append(getEndpoint("@ApiOperation(\"数据上传\") @PostMapping(\"/upload\")", "void",
+                                "upload(@RequestParam(\"file\") MultipartFile file)", entityServiceName + ".upload(file);"))
+                        .append(getEndpoint("@ApiOperation(\"数据下载\") @PostMapping(\"/download\")", "void",
+                                "download(@RequestBody " + queryName + " query, HttpServletResponse response)",
+                                "ExcelUtils.writeExcelToResponse(" + entityServiceName + ".download(query), response, \"data.xlsx\");"));
             }
         }
 
+        // 部分更新时没有可写入的字段返回400，数据不存在返回404，版本号不一致返回409
+        content.append(getEndpoint("@ApiOperation(\"批量删除\") @DeleteMapping(\"/batch\")", "void",
+                "batchDelete(@RequestBody List<Long> ids)", entityServiceName + ".batchDelete(ids);"))
+                .append(getEndpoint("@ApiOperation(\"部分更新\") @PatchMapping(\"/{id}\")", "void",
+                        "patch(@PathVariable(\"id\") Long id, @RequestBody " + dtoName + " dto)", "try { " + entityServiceName + ".patch(id, dto); } "
+                                + "catch (IllegalArgumentException e) { throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()); } "
+                                + "catch (EmptyResultDataAccessException e) { throw new ResponseStatusException(HttpStatus.NOT_FOUND); } "
+                                + "catch (OptimisticLockingFailureException e) { throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage()); }"))
+                .append(getEndpoint("@ApiOperation(\"根据主键批量查询\") @PostMapping(\"/batch-get\")", "List<" + dtoName + ">",
+                        "batchGet(@RequestBody List<Long> ids)", "return " + entityServiceName + ".findByIds(ids);"));
+
+        // 增量同步，返回指定时间之后变更的数据，包括已删除的数据
+        if (null != getChangeTimeColumn()) {
+            content.append(getEndpoint("@ApiOperation(\"增量同步\") @GetMapping(\"/changes\")", "List<" + dtoName + ">",
+                    "changes(@RequestParam(value = \"since\", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since, "
+                            + "@RequestParam(value = \"cursorId\", required = false) Long cursorId, "
+                            + "@RequestParam(value = \"limit\", defaultValue = \"" + config.getBatchSize() + "\") int limit)",
+                    "return " + entityServiceName + ".changesSince(since, cursorId, limit);"));
+        }
+
+        // 分组统计
+        for (Column column : getEnumColumns(entityClasses.getEntityClass())) {
+            content.append(getEndpoint("@ApiOperation(\"按" + column.field.getName() + "统计数量\") @GetMapping(\"/stats/" + column.field.getName() + "\")",
+                    "List<AggregateBucket>", getCountMethod(column) + "()", "return " + entityServiceName + "." + getCountMethod(column) + "();"));
+        }
+        if (config.getWithCreateTime()) {
+            String range = "@RequestParam(value = \"from\", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from, "
+                    + "@RequestParam(value = \"to\", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to";
+            content.append(getEndpoint("@ApiOperation(\"按天统计数量\") @GetMapping(\"/stats/day\")", "List<AggregateBucket>",
+                    "countByDay(" + range + ")", "return " + entityServiceName + ".countByDay(from, to);"))
+                    .append(getEndpoint("@ApiOperation(\"按月统计数量\") @GetMapping(\"/stats/month\")", "List<AggregateBucket>",
+                            "countByMonth(" + range + ")", "return " + entityServiceName + ".countByMonth(from, to);"));
+        }
+
+        // 树形结构查询
+        if (config.getWithTree()) {
+            content.append(getEndpoint("@ApiOperation(\"查询树形结构\") @GetMapping(\"/tree\")", "List<TreeNode<" + dtoName + ">>",
+                    "tree(@RequestParam(value = \"rootId\", required = false) Long rootId)",
+                    "return " + entityServiceName + ".findTree(rootId);"))
+                    .append(getEndpoint("@ApiOperation(\"查询祖先节点\") @GetMapping(\"/{id}/ancestors\")", "List<" + dtoName + ">",
+                            "ancestors(@PathVariable(\"id\") Long id)", "return " + entityServiceName + ".findAncestors(id);"));
+        }
+
+        // 全文检索，按相关度分页返回
+        if (config.getWithSearch()) {
+            content.append(getEndpoint("@ApiOperation(\"全文检索\") @GetMapping(\"/search\")", "PageInfo<" + dtoName + ">",
+                    "search(@RequestParam(\"keyword\") String keyword, @RequestParam(value = \"page\", defaultValue = \"1\") Integer page, "
+                            + "@RequestParam(value = \"size\", defaultValue = \"20\") Integer size)",
+                    "return " + entityServiceName + ".search(keyword, page, size);"));
+        }
+
+        // 流式输出所有数据，从游标中逐行读取并写入响应，每批数据刷新一次；StreamingResponseBody本身异步执行，不需要再包装
+        content.append("\nprivate static final int STREAM_FLUSH_SIZE = ").append(config.getBatchSize()).append(";")
+                .append("@Resource private ObjectMapper objectMapper;")
+                .append("@ApiOperation(\"流式查询所有数据\") @GetMapping(\"/list/stream\") public ResponseEntity<StreamingResponseBody> streamList() { ")
+                .append("StreamingResponseBody body = out -> { try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) { ")
+                .append("generator.writeStartArray(); int[] count = {0}; ")
+                .append(entityServiceName).append(".streamAll(new ").append(queryName).append("(), dto -> { ")
+                .append("try { generator.writeObject(dto); if (0 == ++count[0] % STREAM_FLUSH_SIZE) { generator.flush(); } } ")
+                .append("catch (IOException e) { throw new UncheckedIOException(e); } }); generator.writeEndArray(); } }; ")
+                .append("return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body); }");
+
+        if (config.getWithLob()) {
+            content.append(getEndpoint("@ApiOperation(\"查询详情\") @GetMapping(\"/detail/{id}\")", dtoName,
+                    "detail(@PathVariable(\"id\") Long id)",
+                    "return " + entityServiceName + ".findDetail(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));"));
+        }
+
+        switch (config.getControllerMode()) {
+            case "async":
+                createControllerExecutorConfig();
+                break;
+            case "virtual-thread":
+                createVirtualThreadConfig();
+                break;
+            default:
+        }
+
         content.append("}");
 
         // 在controller目录下创建Controller
@@ -714,6 +2449,7 @@ public class GeneratorAction extends MyAnAction {
                 .importClass("org.springframework.web.bind.annotation.PostMapping")
                 .importClass("GetMapping")
                 .importClass("DeleteMapping")
+                .importClass("PatchMapping")
                 .importClass("RequestBody")
                 .importClass("io.swagger.annotations.Api")
                 .importClass("io.swagger.annotations.ApiOperation")
@@ -722,6 +2458,28 @@ public class GeneratorAction extends MyAnAction {
                 .importClass("RequestParam")
                 .importClass("com.github.pagehelper.PageInfo")
                 .importClassIf(entityClasses.getServiceImplClass().getName(), () -> config.getWithSuper())
+                .importClass("org.springframework.http.ResponseEntity")
+                .importClass("org.springframework.http.MediaType")
+                .importClass("org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody")
+                .importClass("com.fasterxml.jackson.core.JsonGenerator")
+                .importClass("com.fasterxml.jackson.databind.ObjectMapper")
+                .importClass("java.io.IOException")
+                .importClass("java.io.UncheckedIOException")
+                .importClass("org.springframework.http.HttpStatus")
+                .importClassIf("org.springframework.http.HttpHeaders", () -> hasChangeStamp())
+                .importClassIf("org.springframework.http.converter.json.MappingJacksonValue", () -> !config.getWithSuper())
+                .importClassIf("com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider", () -> !config.getWithSuper())
+                .importClassIf("com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter", () -> !config.getWithSuper())
+                .importClassIf("java.util.Set", () -> !config.getWithSuper())
+                .importClassIf("java.util.HashSet", () -> !config.getWithSuper())
+                .importClassIf("org.springframework.format.annotation.DateTimeFormat", () -> null != getChangeTimeColumn())
+                .importClassIf("java.time.LocalDateTime", () -> null != getChangeTimeColumn())
+                .importClassIf("org.springframework.web.bind.annotation.RequestHeader", () -> hasChangeStamp())
+                .importClassIf("java.util.concurrent.CompletableFuture", () -> config.getControllerMode().equals("async"))
+                .importClassIf("java.util.concurrent.Executor", () -> config.getControllerMode().equals("async"))
+                .importClass("org.springframework.web.server.ResponseStatusException")
+                .importClass("org.springframework.dao.EmptyResultDataAccessException")
+                .importClass("org.springframework.dao.OptimisticLockingFailureException")
                 .importClassIf("HttpServletResponse", () -> config.getExcelFunc())
                 .importClassIf("ExcelUtils", () -> config.getExcelFunc())
                 .importClassIf("MultipartFile", () -> config.getExcelFunc())
@@ -729,13 +2487,77 @@ public class GeneratorAction extends MyAnAction {
                 .addTo(controllerDirectory)
                 .and(controllerClass -> {
                     psiUtils.importClass(controllerClass, entityClasses.getDtoClass(), entityClasses.getServiceClass(),
-                            entityClasses.getQueryClass());
+                            entityClasses.getServiceImplClass(), entityClasses.getQueryClass(), entityClasses.getTreeNodeClass(),
+                            entityClasses.getAggregateBucketClass());
 
                     // 创建前端页面
                     createPage(entityClasses);
                 });
     }
 
+    /**
+     * 生成控制器方法，异步模式下返回CompletableFuture，方法体提交到有界线程池中执行，释放Servlet容器线程
+     *
+     * @param annotations 方法注解
+     * @param type        同步模式下的返回类型
+     * @param signature   方法名及参数
+     * @param statements  方法体语句，有返回值时以return语句结束
+     * @return 控制器方法
+     */
+    private String getEndpoint(String annotations, String type, String signature, String statements) {
+        if (!config.getControllerMode().equals("async")) {
+            return annotations + " public " + type + " " + signature + " { " + statements + " }";
+        }
+
+        if ("void".equals(type)) {
+            return annotations + " public CompletableFuture<Void> " + signature
+                    + " { return CompletableFuture.runAsync(() -> { " + statements + " }, controllerExecutor); }";
+        }
+
+        return annotations + " public CompletableFuture<" + type + "> " + signature
+                + " { return CompletableFuture.supplyAsync(() -> { " + statements + " }, controllerExecutor); }";
+    }
+
+    /**
+     * 创建异步控制器使用的有界线程池，队列满时拒绝请求，避免请求无限堆积
+     */
+    private void createControllerExecutorConfig() {
+        createConfigClass("ControllerExecutorConfig", "/** 异步控制器线程池配置 **/\n" +
+                        "@Configuration public class ControllerExecutorConfig {" +
+                        "@Bean(\"controllerExecutor\") public ThreadPoolTaskExecutor controllerExecutor(" +
+                        "@Value(\"${controller.executor.core-size:16}\") int coreSize, " +
+                        "@Value(\"${controller.executor.max-size:64}\") int maxSize, " +
+                        "@Value(\"${controller.executor.queue-capacity:1000}\") int queueCapacity) { " +
+                        "ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor(); executor.setCorePoolSize(coreSize); " +
+                        "executor.setMaxPoolSize(maxSize); executor.setQueueCapacity(queueCapacity); executor.setThreadNamePrefix(\"controller-\"); " +
+                        "executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy()); " +
+                        "executor.setWaitForTasksToCompleteOnShutdown(true); return executor; }}",
+                "org.springframework.context.annotation.Configuration",
+                "org.springframework.context.annotation.Bean",
+                "org.springframework.beans.factory.annotation.Value",
+                "org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor",
+                "java.util.concurrent.ThreadPoolExecutor");
+    }
+
+    /**
+     * 创建虚拟线程配置，Tomcat请求处理及Spring异步任务均使用虚拟线程，需要JDK 21
+     */
+    private void createVirtualThreadConfig() {
+        createConfigClass("VirtualThreadConfig", "/** 虚拟线程配置，每个请求使用一个虚拟线程，阻塞时不占用平台线程 **/\n" +
+                        "@Configuration public class VirtualThreadConfig {" +
+                        "@Bean public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() { " +
+                        "return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor()); }" +
+                        "@Bean(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) public AsyncTaskExecutor applicationTaskExecutor() { " +
+                        "return new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor()); }}",
+                "org.springframework.context.annotation.Configuration",
+                "org.springframework.context.annotation.Bean",
+                "org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer",
+                "org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration",
+                "org.springframework.core.task.AsyncTaskExecutor",
+                "org.springframework.core.task.support.TaskExecutorAdapter",
+                "java.util.concurrent.Executors");
+    }
+
     /**
      * 创建前端页面
      */
@@ -838,12 +2660,29 @@ public class GeneratorAction extends MyAnAction {
         PsiDirectory repositoryDirectory = directoryMap.get("repository");
 
         String repositoryName = entityName.replace("Entity", "").concat("Repository");
+
+        // 有关联实体时增加通过实体图一次加载关联实体的查询方法
+        String entityGraphMethods = "";
+        List<Association> associations = getGraphAssociations(entityClasses.getEntityClass());
+        if (!associations.isEmpty()) {
+            String entityGraph = "@EntityGraph(attributePaths = {" + associations.stream().map(association -> "\"" + association.field.getName() + "\"")
+                    .collect(Collectors.joining(", ")) + "})";
+            entityGraphMethods = entityGraph + " Optional<" + entityClasses.getEntityClassName() + "> findWithAssociationsById(Long id);"
+                    + entityGraph + " List<" + entityClasses.getEntityClassName() + "> findWithAssociationsByIdIn(Collection<Long> ids);"
+                    + entityGraph + " List<" + entityClasses.getEntityClassName() + "> findWithAssociationsBy();";
+        }
+
+        boolean withEntityGraph = !associations.isEmpty();
+        String repositoryContent = comment.getContent("JPA数据库操作类") +
+                "\npublic interface " + repositoryName + " extends BaseRepository<" + entityClasses.getEntityClassName() + "> {" + entityGraphMethods + "}";
         getBaseRepositoryClass(repositoryDirectory, baseRepositoryClass ->
-                ClassCreator.of(module).init(repositoryName,
-                        comment.getContent("JPA数据库操作类") +
-                                "\npublic interface " + repositoryName + " extends BaseRepository<" + entityClasses.getEntityClassName() + "> {}")
+                ClassCreator.of(module).init(repositoryName, repositoryContent)
                         .importClass(entityClasses.getEntityClass())
                         .importClass(baseRepositoryClass)
+                        .importClassIf("org.springframework.data.jpa.repository.EntityGraph", () -> withEntityGraph)
+                        .importClassIf("java.util.Optional", () -> withEntityGraph)
+                        .importClassIf("java.util.List", () -> withEntityGraph)
+                        .importClassIf("java.util.Collection", () -> withEntityGraph)
                         .addTo(repositoryDirectory)
                         .and(repositoryClass -> createClasses(entityClasses.setRepositoryClass(repositoryClass))));
     }
@@ -880,6 +2719,9 @@ public class GeneratorAction extends MyAnAction {
         private PsiClass controllerClass;
         private PsiClass queryClass;
         private PsiClass daoClass;
+        private PsiClass snapshotClass;
+        private PsiClass treeNodeClass;
+        private PsiClass aggregateBucketClass;
         private String controllerPath;
 
         PsiClass getEntityClass() {
@@ -946,6 +2788,13 @@ public class GeneratorAction extends MyAnAction {
         }
 
 
+        /**
+         * 获取注入到控制器中的服务类型名称，生成了服务接口时使用接口，否则使用实现类
+         */
+        String getServiceTypeName() {
+            return null != serviceClass ? serviceClass.getName() : serviceImplClass.getName();
+        }
+
         String getEntityName() {
             return Objects.requireNonNull(this.getEntityClass().getName()).replace("Entity", "");
         }
@@ -971,6 +2820,624 @@ public class GeneratorAction extends MyAnAction {
             this.daoClass = daoClass;
             return this;
         }
+
+        PsiClass getSnapshotClass() {
+            return snapshotClass;
+        }
+
+        EntityClasses setSnapshotClass(PsiClass snapshotClass) {
+            this.snapshotClass = snapshotClass;
+            return this;
+        }
+
+        PsiClass getTreeNodeClass() {
+            return treeNodeClass;
+        }
+
+        EntityClasses setTreeNodeClass(PsiClass treeNodeClass) {
+            this.treeNodeClass = treeNodeClass;
+            return this;
+        }
+
+        PsiClass getAggregateBucketClass() {
+            return aggregateBucketClass;
+        }
+
+        EntityClasses setAggregateBucketClass(PsiClass aggregateBucketClass) {
+            this.aggregateBucketClass = aggregateBucketClass;
+            return this;
+        }
+    }
+
+    /**
+     * 获取实体属性与表字段的对应关系，映射文件中的resultMap及各语句均基于该列表生成
+     *
+     * @param entityClass 实体类
+     * @return 属性与字段对应列表
+     */
+    private List<Column> getColumns(PsiClass entityClass) {
+        List<Column> columns = new ArrayList<>();
+        for (PsiField field : entityClass.getAllFields()) {
+            Column column = new Column();
+            column.field = field;
+            column.property = field.getName();
+            column.name = Arrays.stream(Objects.requireNonNull(StringUtils.splitByCharacterTypeCamelCase(field.getName())))
+                    .reduce((s1, s2) -> s1.toLowerCase().concat("_").concat(s2.toLowerCase())).orElse("");
+
+            // 关联字段只有外键在本表中的单个对象关联对应表字段，映射为关联对象的主键
+            if (psiUtils.getRelationAnnotation(field).isPresent()) {
+                Optional<Association> association = getAssociation(field).filter(a -> a.owner);
+                if (!association.isPresent()) {
+                    continue;
+                }
+
+                column.property = field.getName() + ".id";
+                column.name = association.get().joinColumn;
+                column.association = true;
+            }
+
+            column.lob = null != field.getAnnotation("javax.persistence.Lob")
+                    || psiUtils.getAnnotationValue(field.getAnnotation("javax.persistence.Column"), "columnDefinition")
+                    .map(MyStringUtils::isLargeObjectType).orElse(false);
+
+            // 枚举按Enumerated注解确定存储方式，EnumType.STRING时按名称存储，否则按序号存储
+            PsiClass typeClass = field.getType() instanceof PsiClassType ? ((PsiClassType) field.getType()).resolve() : null;
+            if (null != typeClass && typeClass.isEnum()) {
+                column.enumClass = typeClass;
+                column.typeHandler = psiUtils.getAnnotationValue(field.getAnnotation("javax.persistence.Enumerated"), "value")
+                        .map(value -> value.contains("STRING")).orElse(false)
+                        ? "org.apache.ibatis.type.EnumTypeHandler" : "org.apache.ibatis.type.EnumOrdinalTypeHandler";
+            }
+
+            // resultMap中id元素需要在result元素之前，主键放在第一位
+            if ("id".equals(column.property)) {
+                columns.add(0, column);
+            } else {
+                columns.add(column);
+            }
+        }
+
+        return columns;
+    }
+
+    /**
+     * 获取属性对应的resultMap映射，主键使用id元素，枚举按存储方式指定类型处理器
+     *
+     * @param column 属性与字段对应关系
+     * @return 映射元素
+     */
+    private String getResultMapping(Column column) {
+        String tag = "id".equals(column.property) ? "id" : "result";
+        StringBuilder result = new StringBuilder("<").append(tag).append(" property=\"").append(column.property)
+                .append("\" column=\"").append(column.name).append("\"");
+
+        if (null != column.typeHandler) {
+            result.append(" typeHandler=\"").append(column.typeHandler).append("\"");
+        }
+
+        return result.append("/>").toString();
+    }
+
+    /**
+     * 获取语句中属性对应的参数，枚举使用与resultMap一致的类型处理器
+     *
+     * @param column 属性与字段对应关系
+     * @param prefix 参数前缀，批量语句中为"item."
+     * @return 参数
+     */
+    private String getParameter(Column column, String prefix) {
+        return "#{" + prefix + column.property + (null != column.typeHandler ? ",typeHandler=" + column.typeHandler : "") + "}";
+    }
+
+    /**
+     * 获取枚举类型的列，关联实体的外键除外
+     *
+     * @param entityClass 实体类
+     * @return 枚举列
+     */
+    private List<Column> getEnumColumns(PsiClass entityClass) {
+        return getColumns(entityClass).stream()
+                .filter(column -> null != column.enumClass && !column.association)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 创建分组统计结果类，所有实体共用，创建后继续创建Dao
+     *
+     * @param entityClasses 实体相关类集合
+     */
+    private void createAggregateBucketClass(EntityClasses entityClasses) {
+        ClassCreator.of(module).init("AggregateBucket", "/** 分组统计结果 **/\n" +
+                "public class AggregateBucket {" +
+                "\n/** 分组值：枚举名称、日期(yyyy-MM-dd)或者月份(yyyy-MM) **/ private String key;" +
+                "\n/** 数量 **/ private Long count;}")
+                .addGetterAndSetterMethods()
+                .addTo(directoryMap.get("dto"))
+                .and(bucketClass -> createDao(entityClasses.setAggregateBucketClass(bucketClass)));
+    }
+
+    /**
+     * 获取按枚举字段统计数量的方法名
+     */
+    private String getCountMethod(Column column) {
+        return "countBy" + StringUtils.capitalize(column.field.getName());
+    }
+
+    /**
+     * 获取分组统计语句：按枚举字段统计数量，以及按创建时间统计每天、每月的数量；
+     * 时间分组使用各数据库的日期格式化函数，MySQL方言在H2中运行时通过databaseId使用H2的函数
+     *
+     * @param entityClasses 实体相关类集合
+     * @param tableName     表名
+     * @return 统计语句
+     */
+    private String getAggregationQueries(EntityClasses entityClasses, String tableName) {
+        StringBuilder content = new StringBuilder("\n<resultMap id=\"aggregateBucketMap\" type=\"")
+                .append(psiUtils.getPackageAndName(entityClasses.getAggregateBucketClass()))
+                .append("\">\n<result property=\"key\" column=\"bucket\"/>\n<result property=\"count\" column=\"total\"/>\n</resultMap>");
+        String where = config.getWithDeleted() ? " where deleted = 0" : "";
+        for (Column column : getEnumColumns(entityClasses.getEntityClass())) {
+            content.append("\n<select id=\"").append(getCountMethod(column)).append("\" resultMap=\"aggregateBucketMap\">")
+                    .append("\nselect ").append(column.name).append(" as bucket, count(*) as total from ").append(tableName).append(where)
+                    .append("\ngroup by ").append(column.name).append(" order by total desc\n</select>");
+        }
+
+        if (config.getWithCreateTime()) {
+            String range = " where create_time &gt;= #{from} and create_time &lt; #{to}" + (config.getWithDeleted() ? " and deleted = 0" : "");
+            String[][] buckets = {{"countByDay", "%Y-%m-%d", "YYYY-MM-DD", "yyyy-MM-dd"}, {"countByMonth", "%Y-%m", "YYYY-MM", "yyyy-MM"}};
+            for (String[] bucket : buckets) {
+                String expression;
+                switch (config.getDialect()) {
+                    case "postgresql":
+                        expression = "to_char(create_time, '" + bucket[2] + "')";
+                        break;
+                    case "h2":
+                        expression = "formatdatetime(create_time, '" + bucket[3] + "')";
+                        break;
+                    default:
+                        expression = "<choose><when test=\"_databaseId == 'h2'\">formatdatetime(create_time, '" + bucket[3]
+                                + "')</when><otherwise>date_format(create_time, '" + bucket[1] + "')</otherwise></choose>";
+                }
+
+                content.append("\n<select id=\"").append(bucket[0]).append("\" resultMap=\"aggregateBucketMap\">")
+                        .append("\nselect ").append(expression).append(" as bucket, count(*) as total from ").append(tableName).append(range)
+                        .append("\ngroup by bucket order by bucket\n</select>");
+            }
+
+            if ("mysql".equals(config.getDialect())) {
+                createDatabaseIdConfig();
+            }
+        }
+
+        return content.toString();
+    }
+
+    /**
+     * 创建树节点类，所有树形实体共用，创建后继续创建服务
+     *
+     * @param entityClasses 实体相关类集合
+     */
+    private void createTreeNodeClass(EntityClasses entityClasses) {
+        ClassCreator.of(module).init("TreeNode", "/** 树节点，children按查询顺序排列 **/\n" +
+                "public class TreeNode<T> {" +
+                "private final T data;" +
+                "private final List<TreeNode<T>> children = new ArrayList<>();" +
+                "public TreeNode(T data) { this.data = data; }" +
+                "public T getData() { return data; }" +
+                "public List<TreeNode<T>> getChildren() { return children; }}")
+                .importClass("java.util.List")
+                .importClass("java.util.ArrayList")
+                .addTo(directoryMap.get("dto"))
+                .and(treeNodeClass -> createService(entityClasses.setTreeNodeClass(treeNodeClass)));
+    }
+
+    /**
+     * 树形结构递归查询的最大深度
+     */
+    private static final int MAX_TREE_DEPTH = 64;
+
+    /**
+     * 获取树形结构的递归查询语句：findSubtree按深度返回子树中的节点，id为空时从所有根节点开始；
+     * findAncestors从根节点开始返回祖先节点；递归深度限制为MAX_TREE_DEPTH，避免数据中存在环时无限递归
+     *
+     * @param tableName     表名
+     * @param listSql       列表查询的列
+     * @param listResultMap 列表查询的结果映射
+     * @return 查询语句
+     */
+    private String getTreeQueries(String tableName, String listSql, String listResultMap) {
+        String deleted = config.getWithDeleted() ? " and deleted = 0" : "";
+        return "\n<select id=\"findSubtree\" resultMap=\"" + listResultMap + "\">" +
+                "\nwith recursive subtree (id, depth) as (" +
+                "\nselect id, 0 from " + tableName + " where " +
+                "<choose><when test=\"null != id\">id = #{id}</when><otherwise>(parent_id is null or parent_id = 0)</otherwise></choose>" + deleted +
+                "\nunion all" +
+                "\nselect c.id, s.depth + 1 from " + tableName + " c join subtree s on c.parent_id = s.id where s.depth &lt; " + MAX_TREE_DEPTH +
+                (config.getWithDeleted() ? " and c.deleted = 0" : "") +
+                "\n)" +
+                "\n<include refid=\"" + listSql + "\"/> join subtree on t1.id = subtree.id" +
+                "\norder by subtree.depth, t1.id" +
+                "\n</select>" +
+                "\n<select id=\"findAncestors\" resultMap=\"" + listResultMap + "\">" +
+                "\nwith recursive ancestors (id, parent_id, depth) as (" +
+                "\nselect id, parent_id, 0 from " + tableName + " where id = #{id}" + deleted +
+                "\nunion all" +
+                "\nselect p.id, p.parent_id, a.depth + 1 from " + tableName + " p join ancestors a on p.id = a.parent_id where a.depth &lt; " + MAX_TREE_DEPTH +
+                (config.getWithDeleted() ? " and p.deleted = 0" : "") +
+                "\n)" +
+                "\n<include refid=\"" + listSql + "\"/> join ancestors on t1.id = ancestors.id where ancestors.depth &gt; 0" +
+                "\norder by ancestors.depth desc" +
+                "\n</select>";
+    }
+
+    /**
+     * 获取全文检索的列，只包括配置的或者标注了Searchable注解的字符串字段
+     *
+     * @param entityClass 实体类
+     * @return 全文检索的列
+     */
+    private List<Column> getSearchColumns(PsiClass entityClass) {
+        List<String> searchFields = GeneratorConfig.getEntityFields(config.getSearchFields(),
+                Objects.requireNonNull(entityClass.getName()).replace("Entity", ""));
+        return getColumns(entityClass).stream()
+                .filter(column -> column.field.getType().equalsToText("java.lang.String"))
+                .filter(column -> searchFields.contains(column.field.getName()) || Arrays.stream(column.field.getAnnotations())
+                        .map(PsiAnnotation::getQualifiedName)
+                        .anyMatch(name -> null != name && (name.equals("Searchable") || name.endsWith(".Searchable"))))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 获取全文检索的文档表达式，MySQL为MATCH的列，PostgreSQL为to_tsvector表达式，需要与索引定义一致
+     *
+     * @param searchColumns 全文检索的列
+     * @param alias         表别名，为空时不加别名
+     * @return 文档表达式
+     */
+    private String getSearchDocument(List<Column> searchColumns, String alias) {
+        String prefix = StringUtils.isBlank(alias) ? "" : alias + ".";
+        if ("postgresql".equals(config.getDialect())) {
+            return "to_tsvector('simple', " + searchColumns.stream().map(column -> "coalesce(" + prefix + column.name + ", '')")
+                    .collect(Collectors.joining(" || ' ' || ")) + ")";
+        }
+
+        return searchColumns.stream().map(column -> prefix + column.name).collect(Collectors.joining(", "));
+    }
+
+    /**
+     * 获取全文检索语句，按相关度排序；H2数据库使用like匹配，通过databaseId区分，便于本地测试
+     *
+     * @param searchColumns 全文检索的列
+     * @param tableName     表名
+     * @param listSql       列表查询的列
+     * @param listResultMap 列表查询的结果映射
+     * @return 全文检索语句
+     */
+    private String getSearchQuery(List<Column> searchColumns, String tableName, String listSql, String listResultMap) {
+        String like = "(" + searchColumns.stream().map(column -> "t1." + column.name + " like concat('%', #{keyword}, '%')")
+                .collect(Collectors.joining(" or ")) + ")";
+        String deleted = config.getWithDeleted() ? " and t1.deleted = 0" : "";
+
+        StringBuilder query = new StringBuilder("\n<select id=\"search\" resultMap=\"").append(listResultMap).append("\">")
+                .append("\n<include refid=\"").append(listSql).append("\"/>");
+        if ("h2".equals(config.getDialect())) {
+            return query.append("\nwhere ").append(like).append(deleted).append("\norder by t1.id desc\n</select>").toString();
+        }
+
+        String match;
+        String score;
+        if ("postgresql".equals(config.getDialect())) {
+            match = getSearchDocument(searchColumns, "t1") + " @@ plainto_tsquery('simple', #{keyword})";
+            score = "ts_rank(" + getSearchDocument(searchColumns, "t1") + ", plainto_tsquery('simple', #{keyword}))";
+        } else {
+            match = "match(" + getSearchDocument(searchColumns, "t1") + ") against(#{keyword} in natural language mode)";
+            score = match;
+        }
+
+        return query.append("\n<choose>")
+                .append("\n<when test=\"_databaseId == 'h2'\">where ").append(like).append(deleted).append(" order by t1.id desc</when>")
+                .append("\n<otherwise>where ").append(match).append(deleted).append(" order by ").append(score).append(" desc</otherwise>")
+                .append("\n</choose>\n</select>").toString();
+    }
+
+    /**
+     * 在resources/db目录下创建全文索引脚本，JPA的Index注解无法声明全文索引，需要手动执行或者加入数据库迁移脚本
+     *
+     * @param searchColumns 全文检索的列
+     * @param tableName     表名
+     */
+    private void createSearchIndexScript(List<Column> searchColumns, String tableName) {
+        String indexName = "ft_" + tableName.replaceFirst("^t_", "") + "_search";
+        String content;
+        switch (config.getDialect()) {
+            case "postgresql":
+                content = "-- 全文索引，表达式需要与Dao.xml中search语句的to_tsvector表达式一致\n" +
+                        "create index " + indexName + " on " + tableName + " using gin (" + getSearchDocument(searchColumns, null) + ");\n";
+                break;
+            case "h2":
+                return;
+            default:
+                content = "-- 全文索引，使用ngram分词以支持中文，分词长度由ngram_token_size控制，默认为2\n" +
+                        "alter table " + tableName + " add fulltext index " + indexName + " (" + getSearchDocument(searchColumns, null) + ") with parser ngram;\n";
+        }
+
+        psiUtils.createResourceFile("db", tableName + "_fulltext.sql", content);
+    }
+
+    /**
+     * 创建MyBatis数据库标识配置，映射文件中可以通过_databaseId区分不同数据库的语句
+     */
+    private void createDatabaseIdConfig() {
+        createConfigClass("DatabaseIdConfig", "/** MyBatis数据库标识配置 **/\n" +
+                        "@Configuration public class DatabaseIdConfig {" +
+                        "@Bean @ConditionalOnMissingBean public DatabaseIdProvider databaseIdProvider() { " +
+                        "Properties properties = new Properties(); properties.setProperty(\"MySQL\", \"mysql\"); " +
+                        "properties.setProperty(\"PostgreSQL\", \"postgresql\"); properties.setProperty(\"H2\", \"h2\"); " +
+                        "VendorDatabaseIdProvider provider = new VendorDatabaseIdProvider(); provider.setProperties(properties); return provider; }}",
+                "org.springframework.context.annotation.Configuration",
+                "org.springframework.context.annotation.Bean",
+                "org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean",
+                "org.apache.ibatis.mapping.DatabaseIdProvider",
+                "org.apache.ibatis.mapping.VendorDatabaseIdProvider",
+                "java.util.Properties");
+    }
+
+    /**
+     * 获取实体对应的表名，未通过Table注解指定时使用"t_实体名"
+     *
+     * @param entityClass 实体类
+     * @return 表名
+     */
+    private String getTableName(PsiClass entityClass) {
+        return psiUtils.getAnnotationValue(entityClass.getAnnotation("javax.persistence.Table"), "name")
+                .map(name -> name.replaceAll("\"", ""))
+                .filter(StringUtils::isNotBlank)
+                .orElseGet(() -> "t_" + MyStringUtils.toUnderLineStr(Objects.requireNonNull(entityClass.getName()).replace("Entity", "")));
+    }
+
+    /**
+     * 获取字段对应的关联关系，关联实体无法解析时返回空
+     *
+     * @param field 字段
+     * @return 关联关系
+     */
+    private Optional<Association> getAssociation(PsiField field) {
+        Optional<PsiAnnotation> relation = psiUtils.getRelationAnnotation(field);
+        if (!relation.isPresent()) {
+            return Optional.empty();
+        }
+
+        Association association = new Association();
+        association.field = field;
+        association.collection = PsiUtils.TO_MANY_ANNOTATIONS.contains(relation.get().getQualifiedName());
+        Optional<PsiClass> target = association.collection ? psiUtils.getCollectionEntityClass(field.getType())
+                : psiUtils.getEntityClass(field.getType());
+        if (!target.isPresent()) {
+            return Optional.empty();
+        }
+        association.target = target.get();
+
+        PsiAnnotationMemberValue mappedBy = relation.get().findDeclaredAttributeValue("mappedBy");
+        if (null != mappedBy) {
+            // 由对方维护关联关系，外键在对方表中
+            Optional.ofNullable(association.target.findFieldByName(mappedBy.getText().replace("\"", ""), true))
+                    .ifPresent(targetField -> association.joinColumn = getJoinColumn(targetField));
+        } else if (!association.collection) {
+            association.owner = true;
+            association.joinColumn = getJoinColumn(field);
+        } else if ("javax.persistence.OneToMany".equals(relation.get().getQualifiedName()) && null != field.getAnnotation("javax.persistence.JoinColumn")) {
+            // 单向一对多，外键在对方表中
+            association.joinColumn = getJoinColumn(field);
+        }
+
+        return Optional.of(association);
+    }
+
+    /**
+     * 获取关联字段的外键列名，未通过JoinColumn指定时使用"属性名_id"
+     */
+    private String getJoinColumn(PsiField field) {
+        return psiUtils.getAnnotationValue(field.getAnnotation("javax.persistence.JoinColumn"), "name")
+                .map(name -> name.replaceAll("\"", ""))
+                .filter(StringUtils::isNotBlank)
+                .orElseGet(() -> MyStringUtils.toUnderLineStr(field.getName()) + "_id");
+    }
+
+    /**
+     * 获取实体图中一次加载的关联，包括所有单个对象关联及第一个集合关联；同时抓取多个集合会产生笛卡尔积
+     *
+     * @param entityClass 实体类
+     * @return 关联列表
+     */
+    private List<Association> getGraphAssociations(PsiClass entityClass) {
+        List<Association> associations = new ArrayList<>();
+        boolean withCollection = false;
+        for (PsiField field : entityClass.getAllFields()) {
+            Optional<Association> association = getAssociation(field);
+            if (association.isPresent() && (!association.get().collection || !withCollection)) {
+                withCollection = withCollection || association.get().collection;
+                associations.add(association.get());
+            }
+        }
+
+        return associations;
+    }
+
+    /**
+     * 获取连接查询中加载的关联，只包括能确定外键列的关联，多对多关联只通过实体图加载；
+     * resultMap中association元素需要在collection元素之前，集合关联排在最后
+     *
+     * @param entityClass 实体类
+     * @return 关联列表
+     */
+    private List<Association> getJoinAssociations(PsiClass entityClass) {
+        return getGraphAssociations(entityClass).stream()
+                .filter(association -> null != association.joinColumn)
+                .sorted(Comparator.comparing(association -> association.collection))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 获取关联查询语句及其结果映射，关联实体的列使用"属性名__"前缀，通过association、collection嵌套映射
+     *
+     * @param entityClasses 实体相关类集合
+     * @param columnList    实体的属性与字段对应列表
+     * @param tableName     表名
+     * @return 关联查询语句
+     */
+    private String getAssociationQuery(EntityClasses entityClasses, List<Column> columnList, String tableName) {
+        List<String> selectColumns = new ArrayList<>();
+        StringBuilder resultMap = new StringBuilder("\n<resultMap id=\"associationResultMap\" type=\"")
+                .append(psiUtils.getPackageAndName(entityClasses.getDtoClass())).append("\">");
+        for (Column column : columnList) {
+            if (!column.association && !column.lob) {
+                selectColumns.add("t1." + column.name);
+                resultMap.append(getResultMapping(column));
+            }
+        }
+
+        StringBuilder joins = new StringBuilder();
+        List<Association> associations = getJoinAssociations(entityClasses.getEntityClass());
+        for (int i = 0; i < associations.size(); i++) {
+            Association association = associations.get(i);
+            String alias = "a" + (i + 1);
+            String prefix = association.field.getName() + "__";
+            String tag = association.collection ? "collection" : "association";
+
+            resultMap.append("\n<").append(tag).append(" property=\"").append(association.field.getName()).append("\" ")
+                    .append(association.collection ? "ofType" : "javaType").append("=\"").append(psiUtils.getPackageName(entityClasses.getDtoClass()))
+                    .append(".").append(ClassCreator.getDtoName(association.target))
+                    .append("\" columnPrefix=\"").append(prefix).append("\">");
+            for (Column column : getColumns(association.target)) {
+                if (!column.association && !column.lob) {
+                    selectColumns.add(alias + "." + column.name + " as " + prefix + column.name);
+                    resultMap.append(getResultMapping(column));
+                }
+            }
+            resultMap.append("</").append(tag).append(">");
+
+            joins.append("\nleft join ").append(getTableName(association.target)).append(" ").append(alias).append(" on ");
+            if (association.owner) {
+                joins.append(alias).append(".id = t1.").append(association.joinColumn);
+            } else {
+                joins.append(alias).append(".").append(association.joinColumn).append(" = t1.id");
+            }
+            if (null != association.target.findFieldByName("deleted", true)) {
+                joins.append(" and ").append(alias).append(".deleted = 0");
+            }
+        }
+        resultMap.append("</resultMap>");
+
+        return resultMap + "\n<select id=\"findWithAssociations\" parameterType=\"" + psiUtils.getPackageAndName(entityClasses.getQueryClass())
+                + "\" resultMap=\"associationResultMap\">\nselect " + String.join(", ", selectColumns)
+                + "\nfrom " + tableName + " t1" + joins
+                + (config.getWithDeleted() ? "\nwhere t1.deleted = 0" : "")
+                + "\norder by t1.id\n</select>";
+    }
+
+    /**
+     * 获取增量同步使用的变更时间列，只使用update_time，所有生成的写操作(包括逻辑删除)都会更新该列；
+     * create_time无法反映修改及删除，不作为变更时间
+     *
+     * @return 变更时间列，没有时返回空
+     */
+    private String getChangeTimeColumn() {
+        return config.getWithUpdateTime() ? "update_time" : null;
+    }
+
+    /**
+     * 判断是否生成数据变更标识，需要所有写操作都会改变的update_time或者version，只有create_time时无法识别修改
+     */
+    private boolean hasChangeStamp() {
+        return config.getWithUpdateTime() || config.getWithVersion();
+    }
+
+    /**
+     * 获取写操作中设置更新时间的语句，没有updateTime字段时返回空字符串
+     *
+     * @param target 设置更新时间的对象
+     * @return 设置更新时间语句
+     */
+    private String getUpdateTimeStatement(String target) {
+        return config.getWithUpdateTime() ? target + ".setUpdateTime(LocalDateTime.now()); " : "";
+    }
+
+    /**
+     * 判断是否为更新时间字段，更新时间由写语句写入当前时间
+     */
+    private boolean isUpdateTime(Column column) {
+        return config.getWithUpdateTime() && "updateTime".equals(column.property);
+    }
+
+    /**
+     * 判断是否为部分更新时可以写入的字段，主键、创建时间、逻辑删除标识、版本号及更新时间不由调用方修改
+     */
+    private boolean isPatchable(Column column) {
+        return !"id".equals(column.property) && !"createTime".equals(column.property) && !"deleted".equals(column.property)
+                && !isVersion(column) && !isUpdateTime(column);
+    }
+
+    /**
+     * 判断是否为乐观锁版本号字段，版本号只能由更新语句递增
+     */
+    private boolean isVersion(Column column) {
+        return config.getWithVersion() && "version".equals(column.property);
+    }
+
+    /**
+     * 实体属性与表字段的对应关系
+     */
+    private static final class Column {
+        private PsiField field;
+        private String property;
+        private String name;
+
+        /**
+         * 是否为text、blob等大字段
+         */
+        private boolean lob;
+
+        /**
+         * 是否为关联实体的外键
+         */
+        private boolean association;
+
+        /**
+         * 枚举类型，不是枚举时为空
+         */
+        private PsiClass enumClass;
+
+        /**
+         * MyBatis类型处理器，为空时使用默认处理器
+         */
+        private String typeHandler;
+    }
+
+    /**
+     * 实体之间的关联关系
+     */
+    private static final class Association {
+        private PsiField field;
+
+        /**
+         * 关联的实体类，集合关联时为集合元素类型
+         */
+        private PsiClass target;
+
+        /**
+         * 是否为集合关联
+         */
+        private boolean collection;
+
+        /**
+         * 外键是否在本表中
+         */
+        private boolean owner;
+
+        /**
+         * 外键列，owner为true时在本表中，否则在关联实体表中；无法确定时为空
+         */
+        private String joinColumn;
     }
 
     private static final class Comment {
@@ -11,9 +11,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * 代码生成配置
@@ -58,6 +60,75 @@ public class GeneratorConfig {
                         case "ui.enable":
                             config.setWithPage(Boolean.parseBoolean(v));
                             break;
+                        case "entity.index.fields":
+                            config.setIndexFields(splitList(v));
+                            break;
+                        case "entity.search.fields":
+                            config.setSearchFields(splitList(v));
+                            break;
+                        case "entity.id.strategy":
+                            config.setIdStrategy(v.trim().toUpperCase());
+                            break;
+                        case "entity.id.allocationSize":
+                            config.setIdAllocationSize((int) parseNumber(k, v, 1, Integer.MAX_VALUE, config.getIdAllocationSize()));
+                            break;
+                        case "common.batch.size":
+                            config.setBatchSize((int) parseNumber(k, v, 1, Integer.MAX_VALUE, config.getBatchSize()));
+                            break;
+                        case "controller.mode":
+                            config.setControllerMode(v.trim().toLowerCase());
+                            break;
+                        case "dao.dialect":
+                            config.setDialect(v.trim().toLowerCase());
+                            break;
+                        case "dao.routing":
+                            config.setRouting(Boolean.parseBoolean(v));
+                            break;
+                        case "dao.in.size":
+                            config.setInSize((int) parseNumber(k, v, 1, Integer.MAX_VALUE, config.getInSize()));
+                            break;
+                        case "service.cache.entities":
+                            config.setCacheEntities(splitList(v));
+                            break;
+                        case "service.snapshot.entities":
+                            config.setSnapshotEntities(splitList(v));
+                            break;
+                        case "service.metrics":
+                            config.setMetrics(Boolean.parseBoolean(v));
+                            break;
+                        case "dao.slow.threshold":
+                            config.setSlowSqlThreshold(parseNumber(k, v, 0L, Long.MAX_VALUE, config.getSlowSqlThreshold()));
+                            break;
+                        case "service.snapshot.refresh":
+                            config.setSnapshotRefresh(parseNumber(k, v, 1L, Long.MAX_VALUE, config.getSnapshotRefresh()));
+                            break;
+                        case "entity.version":
+                            config.setVersionColumn(Boolean.parseBoolean(v));
+                            break;
+                        case "service.ingest.entities":
+                            config.setIngestEntities(splitList(v));
+                            break;
+                        case "service.ingest.capacity":
+                            config.setIngestCapacity((int) parseNumber(k, v, 1, Integer.MAX_VALUE, config.getIngestCapacity()));
+                            break;
+                        case "service.ingest.flushInterval":
+                            config.setIngestFlushInterval(parseNumber(k, v, 1L, Long.MAX_VALUE, config.getIngestFlushInterval()));
+                            break;
+                        case "service.purge.entities":
+                            config.setPurgeEntities(splitList(v));
+                            break;
+                        case "service.purge.retention":
+                            config.setPurgeRetention((int) parseNumber(k, v, 0, Integer.MAX_VALUE, config.getPurgeRetention()));
+                            break;
+                        case "service.purge.archive":
+                            config.setPurgeArchive(Boolean.parseBoolean(v));
+                            break;
+                        case "test.perf":
+                            config.setPerfTest(Boolean.parseBoolean(v));
+                            break;
+                        case "test.perf.rows":
+                            config.setPerfRows((int) parseNumber(k, v, 1, Integer.MAX_VALUE, config.getPerfRows()));
+                            break;
                     }
                 });
             } catch (IOException e) {
@@ -79,6 +150,73 @@ public class GeneratorConfig {
         return config;
     }
 
+    /**
+     * 解析数值配置，格式错误或者超出范围时使用默认值，避免批量大小为0等配置导致生成的代码死循环
+     *
+     * @param key          配置项
+     * @param value        配置值
+     * @param min          最小值
+     * @param max          最大值
+     * @param defaultValue 默认值
+     * @return 配置的数值
+     */
+    private static long parseNumber(String key, String value, long min, long max, long defaultValue) {
+        try {
+            long number = Long.parseLong(value.trim());
+            if (number >= min && number <= max) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // 使用默认值
+        }
+
+        System.out.println("配置项" + key + "的值" + value + "无效，使用默认值" + defaultValue);
+        return defaultValue;
+    }
+
+    /**
+     * 将逗号分隔的配置值拆分成列表
+     */
+    private static List<String> splitList(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 获取配置列表中适用于指定实体的字段名
+     * 配置项可以是字段名，也可以是"实体名.字段名"，后者只对对应实体生效
+     *
+     * @param configured 配置的字段列表
+     * @param entityName 实体名称，不包含Entity后缀
+     * @return 适用于该实体的字段名列表
+     */
+    public static List<String> getEntityFields(List<String> configured, String entityName) {
+        List<String> fields = new ArrayList<>();
+        for (String item : configured) {
+            int idx = item.indexOf(".");
+            if (-1 == idx) {
+                fields.add(item);
+            } else if (item.substring(0, idx).equals(entityName)) {
+                fields.add(item.substring(idx + 1));
+            }
+        }
+
+        return fields;
+    }
+
+    /**
+     * 判断实体是否在配置的实体列表中，*表示所有实体
+     *
+     * @param configured 配置的实体列表
+     * @param entityName 实体名称，不包含Entity后缀
+     * @return 在列表中时返回true
+     */
+    public static boolean isEntityEnabled(List<String> configured, String entityName) {
+        return configured.contains("*") || configured.contains(entityName);
+    }
+
     /**
      * 是否生成Excel相关功能
      */
@@ -114,6 +252,181 @@ public class GeneratorConfig {
      */
     private Boolean withPage = false;
 
+    /**
+     * 需要额外建立索引的查询过滤字段
+     */
+    private List<String> indexFields = new ArrayList<>();
+
+    /**
+     * 主键生成策略：IDENTITY/SEQUENCE/TABLE/SNOWFLAKE，IDENTITY会使Hibernate无法批量插入
+     */
+    private String idStrategy = "IDENTITY";
+
+    /**
+     * SEQUENCE及TABLE策略每次预分配的主键数量
+     */
+    private Integer idAllocationSize = 50;
+
+    /**
+     * 批量操作时每批的数据量
+     */
+    private Integer batchSize = 500;
+
+    /**
+     * 控制器模式：blocking为同步方法；async为返回CompletableFuture，在有界线程池中执行；virtual-thread为同步方法，生成虚拟线程配置
+     */
+    private String controllerMode = "blocking";
+
+    /**
+     * 数据库方言：mysql/postgresql/h2，决定upsert等语句的写法
+     */
+    private String dialect = "mysql";
+
+    /**
+     * in查询中每次最多包含的参数个数，超过时分多次查询
+     */
+    private Integer inSize = 1000;
+
+    /**
+     * 是否生成读写分离数据源，只读事务按轮询使用从库
+     */
+    private Boolean routing = false;
+
+    /**
+     * 需要生成缓存的实体列表，*表示所有实体
+     */
+    private List<String> cacheEntities = new ArrayList<>();
+
+    /**
+     * 当前实体是否使用缓存
+     */
+    private Boolean withCache = false;
+
+    /**
+     * 需要生成内存快照的实体列表，*表示所有实体；实体上标注了Snapshot注解时同样生成
+     */
+    private List<String> snapshotEntities = new ArrayList<>();
+
+    /**
+     * 是否生成Micrometer监控：服务方法上的Timed、Counted注解及记录SQL耗时的MyBatis拦截器
+     */
+    private Boolean metrics = false;
+
+    /**
+     * 慢SQL阈值，单位毫秒，超过时记录警告日志
+     */
+    private Long slowSqlThreshold = 1000L;
+
+    /**
+     * 是否在测试目录下生成性能测试：基于内嵌H2（MySQL模式）的JMH基准测试及集成测试
+     */
+    private Boolean perfTest = false;
+
+    /**
+     * 性能测试默认数据量，运行时可以通过perf.rows系统属性覆盖
+     */
+    private Integer perfRows = 10000;
+
+    /**
+     * 内存快照定时刷新间隔，单位毫秒
+     */
+    private Long snapshotRefresh = 300000L;
+
+    /**
+     * 当前实体是否生成内存快照
+     */
+    private Boolean withSnapshot = false;
+
+    /**
+     * 需要生成缓冲写入组件的实体列表，*表示所有实体
+     */
+    private List<String> ingestEntities = new ArrayList<>();
+
+    /**
+     * 缓冲写入队列的容量，队列满时提交方需要等待
+     */
+    private Integer ingestCapacity = 10000;
+
+    /**
+     * 缓冲写入的最长刷新间隔，单位毫秒；队列中数据达到批量大小时立即刷新
+     */
+    private Long ingestFlushInterval = 1000L;
+
+    /**
+     * 需要全文检索的字符串字段，可以是字段名或者"实体名.字段名"；字段上标注了Searchable注解时同样生效
+     */
+    private List<String> searchFields = new ArrayList<>();
+
+    /**
+     * 当前实体是否有全文检索字段
+     */
+    private Boolean withSearch = false;
+
+    /**
+     * 是否有Long类型的parentId字段，有的话作为树形结构处理
+     */
+    private Boolean withTree = false;
+
+    /**
+     * 是否有枚举字段或者createTime字段，有的话生成按枚举值、按天、按月统计数量的语句
+     */
+    private Boolean withAggregation = false;
+
+    /**
+     * 需要生成逻辑删除数据清理组件的实体列表，*表示所有实体；只对有deleted字段及创建或更新时间字段的实体生效
+     */
+    private List<String> purgeEntities = new ArrayList<>();
+
+    /**
+     * 逻辑删除数据的默认保留天数，超过后被清理
+     */
+    private Integer purgeRetention = 30;
+
+    /**
+     * 清理前是否先将数据复制到归档表"表名_archive"中
+     */
+    private Boolean purgeArchive = false;
+
+    /**
+     * 当前实体是否生成逻辑删除数据清理组件
+     */
+    private Boolean withPurge = false;
+
+    /**
+     * 生成实体注解时是否增加乐观锁版本号字段
+     */
+    private Boolean versionColumn = false;
+
+    /**
+     * 是否有乐观锁版本号version字段
+     */
+    private Boolean withVersion = false;
+
+    /**
+     * 是否有text、blob等大字段，有的话列表查询不返回大字段
+     */
+    private Boolean withLob = false;
+
+    /**
+     * 是否有可以通过连接查询加载的关联实体
+     */
+    private Boolean withAssociation = false;
+
+    /**
+     * 是否有updateTime字段
+     */
+    private Boolean withUpdateTime = false;
+
+    /**
+     * 主键是否使用IDENTITY策略
+     */
+    private Boolean withIdentity = true;
+
+    /**
+     * 主键是否由JPA主键生成器(SEQUENCE/TABLE/雪花算法等)生成，MyBatis新增前需要先分配主键
+     */
+    private Boolean withIdGenerator = false;
+
     public Boolean getExcelFunc() {
         return excelFunc;
     }
@@ -246,4 +559,459 @@ public class GeneratorConfig {
     public Boolean getWithPage() {
         return this.withPage;
     }
+
+    public GeneratorConfig indexFields(List<String> indexFields) {
+        this.indexFields = indexFields;
+        return this;
+    }
+
+    public void setIndexFields(List<String> indexFields) {
+        this.indexFields = indexFields;
+    }
+
+    public List<String> getIndexFields() {
+        return this.indexFields;
+    }
+
+    public GeneratorConfig idStrategy(String idStrategy) {
+        this.idStrategy = idStrategy;
+        return this;
+    }
+
+    public void setIdStrategy(String idStrategy) {
+        this.idStrategy = idStrategy;
+    }
+
+    public String getIdStrategy() {
+        return this.idStrategy;
+    }
+
+    public GeneratorConfig idAllocationSize(Integer idAllocationSize) {
+        this.idAllocationSize = idAllocationSize;
+        return this;
+    }
+
+    public void setIdAllocationSize(Integer idAllocationSize) {
+        this.idAllocationSize = idAllocationSize;
+    }
+
+    public Integer getIdAllocationSize() {
+        return this.idAllocationSize;
+    }
+
+    public GeneratorConfig batchSize(Integer batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public void setBatchSize(Integer batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public Integer getBatchSize() {
+        return this.batchSize;
+    }
+
+    public GeneratorConfig withIdentity(Boolean withIdentity) {
+        this.withIdentity = withIdentity;
+        return this;
+    }
+
+    public void setWithIdentity(Boolean withIdentity) {
+        this.withIdentity = withIdentity;
+    }
+
+    public Boolean getWithIdentity() {
+        return this.withIdentity;
+    }
+
+    public GeneratorConfig withIdGenerator(Boolean withIdGenerator) {
+        this.withIdGenerator = withIdGenerator;
+        return this;
+    }
+
+    public void setWithIdGenerator(Boolean withIdGenerator) {
+        this.withIdGenerator = withIdGenerator;
+    }
+
+    public Boolean getWithIdGenerator() {
+        return this.withIdGenerator;
+    }
+
+    public GeneratorConfig dialect(String dialect) {
+        this.dialect = dialect;
+        return this;
+    }
+
+    public void setDialect(String dialect) {
+        this.dialect = dialect;
+    }
+
+    public String getDialect() {
+        return this.dialect;
+    }
+
+    public GeneratorConfig inSize(Integer inSize) {
+        this.inSize = inSize;
+        return this;
+    }
+
+    public void setInSize(Integer inSize) {
+        this.inSize = inSize;
+    }
+
+    public Integer getInSize() {
+        return this.inSize;
+    }
+
+    public GeneratorConfig cacheEntities(List<String> cacheEntities) {
+        this.cacheEntities = cacheEntities;
+        return this;
+    }
+
+    public void setCacheEntities(List<String> cacheEntities) {
+        this.cacheEntities = cacheEntities;
+    }
+
+    public List<String> getCacheEntities() {
+        return this.cacheEntities;
+    }
+
+    public GeneratorConfig withCache(Boolean withCache) {
+        this.withCache = withCache;
+        return this;
+    }
+
+    public void setWithCache(Boolean withCache) {
+        this.withCache = withCache;
+    }
+
+    public Boolean getWithCache() {
+        return this.withCache;
+    }
+
+    public GeneratorConfig snapshotEntities(List<String> snapshotEntities) {
+        this.snapshotEntities = snapshotEntities;
+        return this;
+    }
+
+    public void setSnapshotEntities(List<String> snapshotEntities) {
+        this.snapshotEntities = snapshotEntities;
+    }
+
+    public List<String> getSnapshotEntities() {
+        return this.snapshotEntities;
+    }
+
+    public GeneratorConfig snapshotRefresh(Long snapshotRefresh) {
+        this.snapshotRefresh = snapshotRefresh;
+        return this;
+    }
+
+    public void setSnapshotRefresh(Long snapshotRefresh) {
+        this.snapshotRefresh = snapshotRefresh;
+    }
+
+    public Long getSnapshotRefresh() {
+        return this.snapshotRefresh;
+    }
+
+    public GeneratorConfig withSnapshot(Boolean withSnapshot) {
+        this.withSnapshot = withSnapshot;
+        return this;
+    }
+
+    public void setWithSnapshot(Boolean withSnapshot) {
+        this.withSnapshot = withSnapshot;
+    }
+
+    public Boolean getWithSnapshot() {
+        return this.withSnapshot;
+    }
+
+    public GeneratorConfig ingestEntities(List<String> ingestEntities) {
+        this.ingestEntities = ingestEntities;
+        return this;
+    }
+
+    public void setIngestEntities(List<String> ingestEntities) {
+        this.ingestEntities = ingestEntities;
+    }
+
+    public List<String> getIngestEntities() {
+        return this.ingestEntities;
+    }
+
+    public GeneratorConfig ingestCapacity(Integer ingestCapacity) {
+        this.ingestCapacity = ingestCapacity;
+        return this;
+    }
+
+    public void setIngestCapacity(Integer ingestCapacity) {
+        this.ingestCapacity = ingestCapacity;
+    }
+
+    public Integer getIngestCapacity() {
+        return this.ingestCapacity;
+    }
+
+    public GeneratorConfig ingestFlushInterval(Long ingestFlushInterval) {
+        this.ingestFlushInterval = ingestFlushInterval;
+        return this;
+    }
+
+    public void setIngestFlushInterval(Long ingestFlushInterval) {
+        this.ingestFlushInterval = ingestFlushInterval;
+    }
+
+    public Long getIngestFlushInterval() {
+        return this.ingestFlushInterval;
+    }
+
+    public GeneratorConfig versionColumn(Boolean versionColumn) {
+        this.versionColumn = versionColumn;
+        return this;
+    }
+
+    public void setVersionColumn(Boolean versionColumn) {
+        this.versionColumn = versionColumn;
+    }
+
+    public Boolean getVersionColumn() {
+        return this.versionColumn;
+    }
+
+    public GeneratorConfig withVersion(Boolean withVersion) {
+        this.withVersion = withVersion;
+        return this;
+    }
+
+    public void setWithVersion(Boolean withVersion) {
+        this.withVersion = withVersion;
+    }
+
+    public Boolean getWithVersion() {
+        return this.withVersion;
+    }
+
+    public GeneratorConfig withLob(Boolean withLob) {
+        this.withLob = withLob;
+        return this;
+    }
+
+    public void setWithLob(Boolean withLob) {
+        this.withLob = withLob;
+    }
+
+    public Boolean getWithLob() {
+        return this.withLob;
+    }
+
+    public GeneratorConfig withAssociation(Boolean withAssociation) {
+        this.withAssociation = withAssociation;
+        return this;
+    }
+
+    public void setWithAssociation(Boolean withAssociation) {
+        this.withAssociation = withAssociation;
+    }
+
+    public Boolean getWithAssociation() {
+        return this.withAssociation;
+    }
+
+    public GeneratorConfig withUpdateTime(Boolean withUpdateTime) {
+        this.withUpdateTime = withUpdateTime;
+        return this;
+    }
+
+    public void setWithUpdateTime(Boolean withUpdateTime) {
+        this.withUpdateTime = withUpdateTime;
+    }
+
+    public Boolean getWithUpdateTime() {
+        return this.withUpdateTime;
+    }
+
+    public GeneratorConfig controllerMode(String controllerMode) {
+        this.controllerMode = controllerMode;
+        return this;
+    }
+
+    public void setControllerMode(String controllerMode) {
+        this.controllerMode = controllerMode;
+    }
+
+    public String getControllerMode() {
+        return this.controllerMode;
+    }
+
+    public GeneratorConfig metrics(Boolean metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public void setMetrics(Boolean metrics) {
+        this.metrics = metrics;
+    }
+
+    public Boolean getMetrics() {
+        return this.metrics;
+    }
+
+    public GeneratorConfig slowSqlThreshold(Long slowSqlThreshold) {
+        this.slowSqlThreshold = slowSqlThreshold;
+        return this;
+    }
+
+    public void setSlowSqlThreshold(Long slowSqlThreshold) {
+        this.slowSqlThreshold = slowSqlThreshold;
+    }
+
+    public Long getSlowSqlThreshold() {
+        return this.slowSqlThreshold;
+    }
+
+    public GeneratorConfig perfTest(Boolean perfTest) {
+        this.perfTest = perfTest;
+        return this;
+    }
+
+    public void setPerfTest(Boolean perfTest) {
+        this.perfTest = perfTest;
+    }
+
+    public Boolean getPerfTest() {
+        return this.perfTest;
+    }
+
+    public GeneratorConfig perfRows(Integer perfRows) {
+        this.perfRows = perfRows;
+        return this;
+    }
+
+    public void setPerfRows(Integer perfRows) {
+        this.perfRows = perfRows;
+    }
+
+    public Integer getPerfRows() {
+        return this.perfRows;
+    }
+
+    public GeneratorConfig routing(Boolean routing) {
+        this.routing = routing;
+        return this;
+    }
+
+    public void setRouting(Boolean routing) {
+        this.routing = routing;
+    }
+
+    public Boolean getRouting() {
+        return this.routing;
+    }
+
+    public GeneratorConfig searchFields(List<String> searchFields) {
+        this.searchFields = searchFields;
+        return this;
+    }
+
+    public void setSearchFields(List<String> searchFields) {
+        this.searchFields = searchFields;
+    }
+
+    public List<String> getSearchFields() {
+        return this.searchFields;
+    }
+
+    public GeneratorConfig withSearch(Boolean withSearch) {
+        this.withSearch = withSearch;
+        return this;
+    }
+
+    public void setWithSearch(Boolean withSearch) {
+        this.withSearch = withSearch;
+    }
+
+    public Boolean getWithSearch() {
+        return this.withSearch;
+    }
+
+    public GeneratorConfig withTree(Boolean withTree) {
+        this.withTree = withTree;
+        return this;
+    }
+
+    public void setWithTree(Boolean withTree) {
+        this.withTree = withTree;
+    }
+
+    public Boolean getWithTree() {
+        return this.withTree;
+    }
+
+    public GeneratorConfig withAggregation(Boolean withAggregation) {
+        this.withAggregation = withAggregation;
+        return this;
+    }
+
+    public void setWithAggregation(Boolean withAggregation) {
+        this.withAggregation = withAggregation;
+    }
+
+    public Boolean getWithAggregation() {
+        return this.withAggregation;
+    }
+
+    public GeneratorConfig purgeEntities(List<String> purgeEntities) {
+        this.purgeEntities = purgeEntities;
+        return this;
+    }
+
+    public void setPurgeEntities(List<String> purgeEntities) {
+        this.purgeEntities = purgeEntities;
+    }
+
+    public List<String> getPurgeEntities() {
+        return this.purgeEntities;
+    }
+
+    public GeneratorConfig purgeRetention(Integer purgeRetention) {
+        this.purgeRetention = purgeRetention;
+        return this;
+    }
+
+    public void setPurgeRetention(Integer purgeRetention) {
+        this.purgeRetention = purgeRetention;
+    }
+
+    public Integer getPurgeRetention() {
+        return this.purgeRetention;
+    }
+
+    public GeneratorConfig purgeArchive(Boolean purgeArchive) {
+        this.purgeArchive = purgeArchive;
+        return this;
+    }
+
+    public void setPurgeArchive(Boolean purgeArchive) {
+        this.purgeArchive = purgeArchive;
+    }
+
+    public Boolean getPurgeArchive() {
+        return this.purgeArchive;
+    }
+
+    public GeneratorConfig withPurge(Boolean withPurge) {
+        this.withPurge = withPurge;
+        return this;
+    }
+
+    public void setWithPurge(Boolean withPurge) {
+        this.withPurge = withPurge;
+    }
+
+    public Boolean getWithPurge() {
+        return this.withPurge;
+    }
 }
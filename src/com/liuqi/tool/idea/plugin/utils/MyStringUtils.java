@@ -4,6 +4,7 @@ import org.apache.commons.lang.StringUtils;
 
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.regex.Pattern;
 
 /**
  * 
@@ -12,6 +13,11 @@ import java.util.Objects;
  * @version V1.0
  **/
 public class MyStringUtils {
+    /**
+     * 大字段列类型：text、blob及其tiny/medium/long变体，json、clob
+     */
+    private static final Pattern LARGE_OBJECT_TYPE = Pattern.compile("(?i)^\\W*((tiny|medium|long)?(text|blob)|jsonb?|clob)\\b");
+
     public static String firstLetterToLower(String str) {
         if (StringUtils.isBlank(str)) {
             return "";
@@ -24,4 +30,14 @@ public class MyStringUtils {
         return firstLetterToLower(Arrays.stream(Objects.requireNonNull(org.apache.commons.lang3.StringUtils.splitByCharacterTypeCamelCase(str)))
                 .reduce((s1, s2) -> s1.toLowerCase().concat("_").concat(s2.toLowerCase())).orElse(""));
     }
+
+    /**
+     * 根据列定义判断是否为大字段
+     *
+     * @param columnDefinition 列定义
+     * @return 以大字段类型开头时返回true
+     */
+    public static boolean isLargeObjectType(String columnDefinition) {
+        return null != columnDefinition && LARGE_OBJECT_TYPE.matcher(columnDefinition).find();
+    }
 }
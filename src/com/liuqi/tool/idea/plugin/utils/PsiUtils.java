@@ -13,11 +13,15 @@ import com.intellij.psi.codeStyle.JavaCodeStyleManager;
 import com.intellij.psi.impl.file.PsiDirectoryFactory;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.search.PsiShortNamesCache;
+import com.intellij.psi.search.searches.AnnotatedElementsSearch;
+import com.intellij.psi.util.InheritanceUtil;
+import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.java.generate.element.ElementFactory;
 import org.jetbrains.jps.model.java.JavaModuleSourceRootTypes;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -30,6 +34,16 @@ import java.util.function.Predicate;
  * @version V1.0
  **/
 public class PsiUtils {
+    /**
+     * 单个对象的关联关系注解
+     */
+    public static final List<String> TO_ONE_ANNOTATIONS = Arrays.asList("javax.persistence.ManyToOne", "javax.persistence.OneToOne");
+
+    /**
+     * 集合的关联关系注解
+     */
+    public static final List<String> TO_MANY_ANNOTATIONS = Arrays.asList("javax.persistence.OneToMany", "javax.persistence.ManyToMany");
+
     private Project project;
     private Module module;
 
@@ -68,6 +82,10 @@ public class PsiUtils {
         }
 
         PsiDirectory psiDirectory = PsiDirectoryFactory.getInstance(project).createDirectory(dir);
+        if (null != psiDirectory.findFile(fileName)) {
+            // 已存在时不覆盖
+            return;
+        }
 
         PsiFile file = PsiFileFactory.getInstance(project).createFileFromText(fileName, FileTypes.PLAIN_TEXT,
                 content);
@@ -100,6 +118,21 @@ public class PsiUtils {
         }).orElse(Optional.empty());
     }
 
+    /**
+     * 获取注解中显式声明的整型属性值，支持常量表达式
+     *
+     * @param annotation 注解
+     * @param field      属性名
+     * @return 属性值，未声明或者不是整数时返回空
+     */
+    public Optional<Integer> getAnnotationIntValue(PsiAnnotation annotation, String field) {
+        return Optional.ofNullable(annotation)
+                .map(a -> a.findDeclaredAttributeValue(field))
+                .map(value -> JavaPsiFacade.getInstance(project).getConstantEvaluationHelper().computeConstantExpression(value))
+                .filter(value -> value instanceof Number)
+                .map(value -> ((Number) value).intValue());
+    }
+
     public Optional<String> getAnnotationValue(PsiFile psiFile, String annotation, String field) {
         return getAnnotationValue(((PsiJavaFile)psiFile).getClasses()[0], annotation, field);
     }
@@ -141,6 +174,69 @@ public class PsiUtils {
         JavaCodeStyleManager.getInstance(project).shortenClassReferences(psiAnnotation);
     }
 
+    public void addAnnotationFromStrFirst(PsiMethod psiElement, String content) {
+        PsiAnnotation psiAnnotation = PsiElementFactory.getInstance(project).createAnnotationFromText(content, null);
+        PsiModifierList psiModifierList = psiElement.getModifierList();
+        psiModifierList.addBefore(psiAnnotation, psiModifierList.getFirstChild());
+        JavaCodeStyleManager.getInstance(project).shortenClassReferences(psiAnnotation);
+    }
+
+    /**
+     * 设置注解属性值，已存在时替换
+     *
+     * @param annotation 注解
+     * @param field      属性名
+     * @param value      属性值表达式
+     */
+    public void setAnnotationValue(PsiAnnotation annotation, String field, String value) {
+        PsiExpression expression = PsiElementFactory.getInstance(project).createExpressionFromText(value, annotation);
+        annotation.setDeclaredAttributeValue(field, expression);
+        JavaCodeStyleManager.getInstance(project).shortenClassReferences(annotation);
+    }
+
+    /**
+     * 获取字段上的关联关系注解
+     *
+     * @param field 字段
+     * @return ManyToOne、OneToOne、OneToMany或者ManyToMany注解，没有时返回空
+     */
+    public Optional<PsiAnnotation> getRelationAnnotation(PsiField field) {
+        return TO_ONE_ANNOTATIONS.stream().map(field::getAnnotation).filter(Objects::nonNull).findFirst()
+                .map(Optional::of)
+                .orElseGet(() -> TO_MANY_ANNOTATIONS.stream().map(field::getAnnotation).filter(Objects::nonNull).findFirst());
+    }
+
+    /**
+     * 获取类型对应的实体类，被Entity注解或者以Entity结尾的类视为实体类
+     *
+     * @param type 字段类型
+     * @return 实体类，不是实体类型时返回空
+     */
+    public Optional<PsiClass> getEntityClass(PsiType type) {
+        if (!(type instanceof PsiClassType)) {
+            return Optional.empty();
+        }
+
+        return Optional.ofNullable(((PsiClassType) type).resolve())
+                .filter(psiClass -> null != psiClass.getAnnotation("javax.persistence.Entity")
+                        || Objects.requireNonNull(psiClass.getName()).endsWith("Entity"));
+    }
+
+    /**
+     * 获取集合类型中的实体类
+     *
+     * @param type 字段类型
+     * @return 集合元素对应的实体类，不是实体集合时返回空
+     */
+    public Optional<PsiClass> getCollectionEntityClass(PsiType type) {
+        if (!(type instanceof PsiClassType) || !InheritanceUtil.isInheritor(type, "java.util.Collection")) {
+            return Optional.empty();
+        }
+
+        PsiType[] parameters = ((PsiClassType) type).getParameters();
+        return 1 == parameters.length ? getEntityClass(parameters[0]) : Optional.empty();
+    }
+
     /**
      * 格式化代码
      *
@@ -202,6 +298,40 @@ public class PsiUtils {
         return Optional.ofNullable(parentDirectory.findSubdirectory(subDirectoryName)).orElseGet(() -> parentDirectory.createSubdirectory(subDirectoryName));
     }
 
+    /**
+     * 获取测试源码目录下与源码目录包名相同的目录，不存在时逐级创建
+     *
+     * @param sourceDirectory 源码目录
+     * @return 测试目录，模块没有测试源码目录时返回空
+     */
+    public Optional<PsiDirectory> getTestDirectory(PsiDirectory sourceDirectory) {
+        List<VirtualFile> testRoots = ModuleRootManager.getInstance(module).getSourceRoots(JavaModuleSourceRootTypes.TESTS);
+        if (testRoots.isEmpty()) {
+            return Optional.empty();
+        }
+
+        PsiDirectory directory = PsiDirectoryFactory.getInstance(project).createDirectory(testRoots.get(0));
+        PsiPackage psiPackage = JavaDirectoryService.getInstance().getPackage(sourceDirectory);
+        if (null != psiPackage && StringUtils.isNotBlank(psiPackage.getQualifiedName())) {
+            for (String name : psiPackage.getQualifiedName().split("\\.")) {
+                directory = getOrCreateSubDirectory(directory, name);
+            }
+        }
+
+        return Optional.of(directory);
+    }
+
+    /**
+     * 在当前模块中查找被指定注解标注的类
+     *
+     * @param annotation 注解全名
+     * @return 查找到的第一个类
+     */
+    public Optional<PsiClass> findAnnotatedClass(String annotation) {
+        return findClass(annotation).map(annotationClass -> AnnotatedElementsSearch
+                .searchPsiClasses(annotationClass, GlobalSearchScope.moduleScope(module)).findFirst());
+    }
+
     /**
      * 为字段增加Setter与Getter方法
      */